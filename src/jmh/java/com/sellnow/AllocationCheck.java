@@ -0,0 +1,143 @@
+package com.sellnow;
+
+import com.sun.management.ThreadMXBean;
+
+import java.awt.Graphics2D;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Reports the bytes the overlay's frames and the price lookup path allocate, failing the build if a
+ * steady-state case goes over a small fixed budget
+ * Each case runs until compiled, then the bytes its thread allocates over many more iterations are read from
+ * the JVM's per-thread counter. The budget covers a one-off allocation during the whole run, never one per
+ * iteration. Rebuilding the tooltip allocates its text by design, so that case is only reported. Frames draw to
+ * graphics that discard every call, so only the plugin's own allocations count and not Java2D's
+ * Run with gradle allocationCheck, which gradle check also runs
+ */
+public final class AllocationCheck {
+    
+    private static final int WARMUP_ITERATIONS = 50_000;
+    private static final int MEASURED_ITERATIONS = 10_000;
+    // Bytes a steady-state case may allocate over all its measured iterations
+    private static final long BUDGET_BYTES = 256;
+    private static final long REPORT_ONLY = -1;
+    
+    // Written by the lookup case, so its work cannot be optimized away
+    private static long sink;
+    private static int frame;
+    
+    private AllocationCheck() {
+    }
+    
+    public static void main(String[] args) throws Exception {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            System.out.println("Skipped, this JVM does not count allocated bytes per thread");
+            return;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        
+        OverlayFixtures fixtures = new OverlayFixtures(LatestPayloads.synthetic(LatestPayloads.LIVE_ITEM_COUNT, 0));
+        Graphics2D graphics = OverlayFixtures.discardingGraphics();
+        PriceTable table = fixtures.priceService.getPriceTable();
+        int[] itemIds = new int[1024];
+        for (int itemId = 0, count = 0; count < itemIds.length; itemId = (itemId + 1) % table.getCapacity()) {
+            if (table.hasPrice(itemId)) {
+                itemIds[count++] = itemId;
+            }
+        }
+        
+        net.runelite.api.Point[] rangedSlots = new net.runelite.api.Point[OverlayFixtures.RANGED_SLOTS];
+        for (int slot = 0; slot < rangedSlots.length; slot++) {
+            rangedSlots[slot] = OverlayFixtures.inventorySlotCenter(slot);
+        }
+        
+        Case[] cases = {
+            new Case("overlay frame", BUDGET_BYTES, () -> {
+                fixtures.clientState.mouse = new net.runelite.api.Point(-1, -1);
+            }, () -> {
+                fixtures.overlay.render(graphics);
+            }),
+            new Case("overlay frame, hovering an item", BUDGET_BYTES, () -> {
+                fixtures.clientState.mouse = rangedSlots[0];
+            }, () -> {
+                fixtures.overlay.render(graphics);
+                // The client clears tooltips after drawing them each frame
+                fixtures.tooltipManager.clear();
+            }),
+            new Case("overlay frame, tooltip rebuilt", REPORT_ONLY, () -> {
+            }, () -> {
+                // Moving between items with every range line rebuilds the tooltip each frame
+                fixtures.clientState.mouse = rangedSlots[frame++ % rangedSlots.length];
+                fixtures.overlay.render(graphics);
+                fixtures.tooltipManager.clear();
+            }),
+            new Case("price lookups, 1024 items", BUDGET_BYTES, () -> {
+            }, () -> {
+                PriceTable prices = fixtures.priceService.getPriceTable();
+                long total = 0;
+                for (int itemId : itemIds) {
+                    if (prices.isAtAllTimeHigh(itemId)) {
+                        total += prices.getColorTier(itemId);
+                    }
+                    total += prices.getCurrentPrice(itemId);
+                }
+                sink += total;
+            })
+        };
+        
+        long overhead = allocatedBy(threads, () -> {
+        });
+        StringBuilder over = new StringBuilder();
+        System.out.printf("Bytes allocated over %,d iterations after %,d to warm up%n", MEASURED_ITERATIONS,
+            WARMUP_ITERATIONS);
+        System.out.printf("%-34s %14s %12s %10s%n", "case", "bytes", "bytes/iter", "budget");
+        for (Case check : cases) {
+            check.setUp.run();
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                check.iteration.run();
+            }
+            long bytes = Math.max(0, allocatedBy(threads, check.iteration) - overhead);
+            System.out.printf("%-34s %,14d %12.2f %10s%n", check.name, bytes, (double) bytes / MEASURED_ITERATIONS,
+                check.budget == REPORT_ONLY ? "-" : String.valueOf(check.budget));
+            if (check.budget != REPORT_ONLY && bytes > check.budget) {
+                over.append(String.format("%s allocated %,d bytes, over its budget of %,d%n", check.name, bytes,
+                    check.budget));
+            }
+        }
+        
+        if (over.length() > 0) {
+            System.out.print(over);
+            System.out.println("Profile the case with the jmh gc profiler to find where it allocates");
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * Count the bytes allocated while running an iteration the measured number of times, including the cost
+     * of reading the counter, which the empty iteration measures
+     */
+    private static long allocatedBy(ThreadMXBean threads, Runnable iteration) {
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            iteration.run();
+        }
+        return threads.getThreadAllocatedBytes(thread) - before;
+    }
+    
+    private static final class Case {
+        private final String name;
+        // Bytes allowed over all measured iterations, or REPORT_ONLY
+        private final long budget;
+        private final Runnable setUp;
+        private final Runnable iteration;
+        
+        Case(String name, long budget, Runnable setUp, Runnable iteration) {
+            this.name = name;
+            this.budget = budget;
+            this.setUp = setUp;
+            this.iteration = iteration;
+        }
+    }
+}
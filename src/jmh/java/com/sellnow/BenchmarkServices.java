@@ -0,0 +1,103 @@
+package com.sellnow;
+
+import net.runelite.client.eventbus.EventBus;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Creates a {@link GEPriceService} backed by throwaway files for benchmarks
+ */
+final class BenchmarkServices {
+    
+    private BenchmarkServices() {
+    }
+    
+    static GEPriceService priceService(PayloadSource source) throws IOException {
+        return priceService(null, null, source, new SellNowMetrics());
+    }
+    
+    /**
+     * @param mappingUrl Where item names are loaded from, or null if they are not loaded
+     */
+    static GEPriceService priceService(OkHttpClient httpClient, HttpUrl mappingUrl, PriceSource source,
+                                       SellNowMetrics metrics) throws IOException {
+        return priceService(httpClient, mappingUrl, source, metrics, tempDirectory(), new InterestSet());
+    }
+    
+    /**
+     * @param dir Where the stores keep their files, such as one from {@link #tempDirectory()} holding history
+     * @param interestSet The items treated as held, which get statistics and history
+     */
+    static GEPriceService priceService(PayloadSource source, File dir, InterestSet interestSet) {
+        return priceService(null, null, source, new SellNowMetrics(), dir, interestSet);
+    }
+    
+    private static GEPriceService priceService(OkHttpClient httpClient, HttpUrl mappingUrl, PriceSource source,
+                                               SellNowMetrics metrics, File dir, InterestSet interestSet) {
+        return new GEPriceService(httpClient, mappingUrl, source, null,
+            new AllTimeHighStore(new File(dir, "all-time-highs.dat")), new PriceHistoryStore(dir),
+            new SharedPriceCache(dir),
+            new ItemMappingCache(new File(dir, "item-mapping.dat")),
+            metrics, interestSet, new EventBus());
+    }
+    
+    /**
+     * Create a directory for the stores' files, deleted when the JVM exits
+     */
+    static File tempDirectory() throws IOException {
+        File dir = Files.createTempDirectory("sell-now-bench").toFile();
+        deleteOnShutdown(dir.toPath());
+        return dir;
+    }
+    
+    /**
+     * Delete a directory and everything in it when the JVM exits
+     * deleteOnExit only deletes empty directories, and the stores fill theirs with mapped files
+     */
+    private static void deleteOnShutdown(Path dir) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try (Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            } catch (IOException e) {
+                System.err.println("Could not delete " + dir + ": " + e);
+            }
+        }, "sell-now-bench-cleanup"));
+    }
+    
+    static int ingest(GEPriceService priceService, PayloadSource source, byte[] payload) throws IOException {
+        source.payload = payload;
+        return priceService.updateFrom(source, System.currentTimeMillis());
+    }
+    
+    /**
+     * Serves a recorded /latest body through the wiki source's read and parse path, without HTTP
+     */
+    static final class PayloadSource implements PriceSource {
+        
+        private final WikiPriceSource wiki = new WikiPriceSource(null, new SellNowMetrics());
+        private byte[] payload;
+        
+        @Override
+        public String getName() {
+            return "Payload";
+        }
+        
+        @Override
+        public Result fetch(PriceTable current, PriceUpdateBatch batch) throws IOException {
+            return wiki.readLatest(new ByteArrayInputStream(payload), batch);
+        }
+        
+        @Override
+        public void acknowledge() {
+            wiki.acknowledge();
+        }
+    }
+}
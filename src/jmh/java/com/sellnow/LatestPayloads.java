@@ -0,0 +1,111 @@
+package com.sellnow;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Builds /latest payloads shaped like the OSRS Wiki response for benchmarks
+ */
+final class LatestPayloads {
+    
+    /** Roughly the number of items the wiki returns from /latest */
+    static final int LIVE_ITEM_COUNT = 4_000;
+    
+    private LatestPayloads() {
+    }
+    
+    /**
+     * Generate a payload with the given number of items
+     * Item IDs only depend on the item count, so payloads with different seeds update the same items;
+     * roughly 5% of items are missing a high price
+     */
+    static byte[] synthetic(int itemCount, long seed) {
+        Random ids = new Random(itemCount);
+        Random random = new Random(seed);
+        StringBuilder json = new StringBuilder(itemCount * 80);
+        long now = 1_700_000_000L + seed;
+        
+        json.append("{\"data\":{");
+        int itemId = 2;
+        for (int i = 0; i < itemCount; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            long high = 1 + (long) Math.exp(random.nextDouble() * 21);
+            long low = Math.max(1, high - random.nextInt((int) Math.min(high, 10_000)));
+            appendItem(json, itemId, random.nextInt(20) == 0 ? 0 : high, now - random.nextInt(86_400),
+                low, now - random.nextInt(86_400));
+            itemId += 1 + ids.nextInt(7);
+        }
+        json.append("}}");
+        
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Scale a recorded /latest payload by repeating its items under new item IDs
+     * @param timeShift Added to every trade time, so payloads with different shifts update every item
+     */
+    static byte[] recorded(byte[] recording, int scale, long timeShift) throws IOException {
+        PriceUpdateBatch batch = new PriceUpdateBatch(8192);
+        LatestPricesParser.parse(new JsonReader(new StringReader(new String(recording, StandardCharsets.UTF_8))), batch);
+        
+        int idStride = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            idStride = Math.max(idStride, batch.getItemId(i) + 1);
+        }
+        
+        StringBuilder json = new StringBuilder(recording.length * scale);
+        json.append("{\"data\":{");
+        for (int copy = 0; copy < scale; copy++) {
+            for (int i = 0; i < batch.size(); i++) {
+                if (copy > 0 || i > 0) {
+                    json.append(',');
+                }
+                appendItem(json, copy * idStride + batch.getItemId(i), batch.getHigh(i),
+                    batch.getHighTime(i) + timeShift, batch.getLow(i), batch.getLowTime(i) + timeShift);
+            }
+        }
+        json.append("}}");
+        
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Load the payload named by the sellnow.recording system property or benchmark parameter,
+     * or generate one if none is given
+     */
+    static byte[] load(String recording, int scale, long seed) throws IOException {
+        if (recording == null || recording.isEmpty()) {
+            return synthetic(LIVE_ITEM_COUNT * scale, seed);
+        }
+        return recorded(Files.readAllBytes(Paths.get(recording)), scale, seed);
+    }
+    
+    /**
+     * Build a /latest body with a single item, traded at one price
+     * @param time The trade time, in epoch seconds
+     */
+    static byte[] single(int itemId, long price, long time) {
+        StringBuilder json = new StringBuilder("{\"data\":{");
+        appendItem(json, itemId, price, time, price, time);
+        json.append("}}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private static void appendItem(StringBuilder json, int itemId, long high, long highTime, long low, long lowTime) {
+        json.append('"').append(itemId).append("\":{");
+        if (high > 0) {
+            json.append("\"high\":").append(high).append(",\"highTime\":").append(highTime).append(',');
+        } else {
+            json.append("\"high\":null,\"highTime\":null,");
+        }
+        json.append("\"low\":").append(low).append(",\"lowTime\":").append(lowTime).append('}');
+    }
+}
@@ -0,0 +1,78 @@
+package com.sellnow;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming /latest parser against the previous String + JSON tree approach
+ * Run with the gc profiler (the default for the jmh task) to see bytes allocated per poll
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LatestPricesParseBenchmark {
+    
+    @Param({"4000", "40000", "400000"})
+    public int itemCount;
+    
+    private byte[] payload;
+    
+    @Setup
+    public void setUp() {
+        payload = LatestPayloads.synthetic(itemCount, 42);
+    }
+    
+    @Benchmark
+    public int streaming(Blackhole blackhole) throws IOException {
+        try (JsonReader reader = new JsonReader(
+            new InputStreamReader(new ByteArrayInputStream(payload), StandardCharsets.UTF_8))) {
+            return LatestPricesParser.parse(reader, (itemId, high, highTime, low, lowTime) -> {
+                blackhole.consume(itemId);
+                blackhole.consume(high > 0 ? high : low);
+            });
+        }
+    }
+    
+    @Benchmark
+    public int stringAndTree(Blackhole blackhole) {
+        String responseBody = new String(payload, StandardCharsets.UTF_8);
+        JsonObject data = JsonParser.parseString(responseBody).getAsJsonObject().getAsJsonObject("data");
+        for (Map.Entry<String, JsonElement> entry : data.entrySet()) {
+            int itemId = Integer.parseInt(entry.getKey());
+            JsonObject priceData = entry.getValue().getAsJsonObject();
+            long price = 0;
+            if (priceData.has("high") && !priceData.get("high").isJsonNull()) {
+                price = priceData.get("high").getAsLong();
+            } else if (priceData.has("low")) {
+                price = priceData.get("low").getAsLong();
+            }
+            blackhole.consume(itemId);
+            blackhole.consume(price);
+        }
+        return data.size();
+    }
+}
@@ -0,0 +1,45 @@
+package com.sellnow;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds /mapping payloads shaped like the OSRS Wiki response for the load harness
+ */
+final class MappingPayloads {
+    
+    private MappingPayloads() {
+    }
+    
+    /**
+     * Generate a mapping with an entry for every item in a /latest payload
+     * Entries carry the same extra fields as the real response, which the service has to skip
+     */
+    static byte[] forLatest(byte[] latest) throws IOException {
+        PriceUpdateBatch batch = new PriceUpdateBatch(8192);
+        LatestPricesParser.parse(new JsonReader(new StringReader(new String(latest, StandardCharsets.UTF_8))), batch);
+        
+        StringBuilder json = new StringBuilder(batch.size() * 160);
+        json.append('[');
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            int itemId = batch.getItemId(i);
+            json.append("{\"examine\":\"A synthetic item.\",\"id\":").append(itemId)
+                .append(",\"members\":").append(itemId % 2 == 0)
+                .append(",\"lowalch\":").append(itemId % 1000)
+                .append(",\"limit\":").append(100 + itemId % 10_000)
+                .append(",\"value\":").append(itemId % 5000)
+                .append(",\"highalch\":").append(itemId % 1500)
+                .append(",\"icon\":\"Item ").append(itemId).append(".png\"")
+                .append(",\"name\":\"Item ").append(itemId).append("\"}");
+        }
+        json.append(']');
+        
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,279 @@
+package com.sellnow;
+
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.description.modifier.Visibility;
+import net.bytebuddy.dynamic.DynamicType;
+import net.bytebuddy.implementation.MethodDelegation;
+import net.bytebuddy.implementation.StubMethod;
+import net.runelite.api.Client;
+import net.runelite.api.InventoryID;
+import net.runelite.api.Point;
+import net.runelite.api.widgets.Widget;
+import net.runelite.client.ui.overlay.tooltip.TooltipManager;
+
+import java.awt.Graphics2D;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.TimeUnit;
+
+import static net.bytebuddy.matcher.ElementMatchers.isAbstract;
+import static net.bytebuddy.matcher.ElementMatchers.named;
+import static net.bytebuddy.matcher.ElementMatchers.takesArguments;
+
+/**
+ * Stub client and widgets for driving {@link SellNowOverlay} outside the game
+ * The stubs are generated classes that call straight into plain state objects, so unlike proxies or mocks
+ * they do not allocate when the overlay calls them
+ */
+public final class OverlayFixtures {
+    
+    static final int INVENTORY_SLOTS = 28;
+    static final int BANK_SLOTS = 800;
+    /** Inventory slots, from the first, whose items have statistics and history for every tooltip range */
+    static final int RANGED_SLOTS = 2;
+    
+    private static final Class<? extends Client> CLIENT_TYPE = stubType(Client.class, ClientState.class);
+    private static final Class<? extends Widget> WIDGET_TYPE = stubType(Widget.class, WidgetState.class);
+    private static final Class<? extends Graphics2D> GRAPHICS_TYPE = new ByteBuddy()
+        .subclass(Graphics2D.class)
+        .method(isAbstract()).intercept(StubMethod.INSTANCE)
+        .make()
+        .load(OverlayFixtures.class.getClassLoader())
+        .getLoaded();
+    
+    final GEPriceService priceService;
+    final HighlightIndex highlightIndex;
+    final SellNowOverlay overlay;
+    final ClientState clientState;
+    final TooltipManager tooltipManager;
+    
+    /**
+     * Build an overlay with a full inventory and an 800 slot bank, every item priced and at its all-time high
+     * The inventory is the held items, and its first {@link #RANGED_SLOTS} items have a month of history and a
+     * few polls of statistics, so hovering them builds the 24h, 7d, 30d and 1y lines of the tooltip
+     */
+    OverlayFixtures(byte[] payload) throws Exception {
+        File dir = BenchmarkServices.tempDirectory();
+        InterestSet interestSet = new InterestSet();
+        BenchmarkServices.PayloadSource source = new BenchmarkServices.PayloadSource();
+        priceService = BenchmarkServices.priceService(source, dir, interestSet);
+        BenchmarkServices.ingest(priceService, source, payload);
+        
+        PriceTable prices = priceService.getPriceTable();
+        int[] itemIds = new int[INVENTORY_SLOTS + BANK_SLOTS];
+        for (int itemId = 0, count = 0; count < itemIds.length; itemId = (itemId + 1) % prices.getCapacity()) {
+            if (prices.isAtAllTimeHigh(itemId)) {
+                itemIds[count++] = itemId;
+            }
+        }
+        ItemNameIndex.Builder names = new ItemNameIndex.Builder();
+        for (int itemId : itemIds) {
+            names.add(itemId, "Item " + itemId);
+        }
+        priceService.setItemNames(names.build());
+        
+        int[] inventoryIds = java.util.Arrays.copyOfRange(itemIds, 0, INVENTORY_SLOTS);
+        int[] bankIds = java.util.Arrays.copyOfRange(itemIds, INVENTORY_SLOTS, itemIds.length);
+        recordRanges(dir, source, interestSet, inventoryIds);
+        
+        highlightIndex = new HighlightIndex();
+        highlightIndex.setContainer(InventoryID.INVENTORY.getId(), inventoryIds, inventoryIds);
+        highlightIndex.setContainer(InventoryID.BANK.getId(), bankIds, bankIds);
+        
+        clientState = new ClientState();
+        clientState.inventory = container(new Point(560, 210), 4, 190, 260, inventoryIds);
+        clientState.bank = container(new Point(20, 80), 8, 460, 600, bankIds);
+        clientState.mouse = new Point(-1, -1);
+        
+        tooltipManager = new TooltipManager();
+        overlay = new SellNowOverlay(stub(CLIENT_TYPE, clientState), new SellNowConfig() {
+        }, priceService, tooltipManager, highlightIndex, new SellNowMetrics());
+    }
+    
+    /**
+     * Hold the inventory's items and give the first few a month of daily history and a few polls of rising prices
+     * The history is written by a store of its own, which the service's store folds when the first poll opens it
+     */
+    private void recordRanges(File dir, BenchmarkServices.PayloadSource source, InterestSet interestSet,
+                              int[] inventoryIds) throws IOException {
+        long now = System.currentTimeMillis();
+        PriceTable prices = priceService.getPriceTable();
+        PriceHistoryStore history = new PriceHistoryStore(dir);
+        for (int day = 30; day > 0; day--) {
+            history.begin(now - TimeUnit.DAYS.toMillis(day));
+            for (int slot = 0; slot < RANGED_SLOTS; slot++) {
+                history.append(inventoryIds[slot], prices.getCurrentPrice(inventoryIds[slot]) * (90 + day % 10) / 100);
+            }
+            history.commit();
+        }
+        history.close();
+        
+        interestSet.setContainer(InventoryID.INVENTORY.getId(), inventoryIds);
+        long tradeTime = TimeUnit.MILLISECONDS.toSeconds(now);
+        for (int poll = 1; poll <= 3; poll++) {
+            for (int slot = 0; slot < RANGED_SLOTS; slot++) {
+                // Rising, so the items stay at their all-time high
+                long price = prices.getCurrentPrice(inventoryIds[slot]) + poll;
+                BenchmarkServices.ingest(priceService, source,
+                    LatestPayloads.single(inventoryIds[slot], price, tradeTime + poll));
+            }
+        }
+        priceService.refreshHistoryRanges();
+    }
+    
+    /**
+     * Get the canvas position of the middle of an inventory slot, for hovering it
+     */
+    static Point inventorySlotCenter(int slot) {
+        return new Point(560 + (slot % 4) * 48 + 18, 210 + (slot / 4) * 36 + 16);
+    }
+    
+    /**
+     * Create graphics that discard every call, so a frame's cost is the overlay's own and not Java2D's
+     */
+    static Graphics2D discardingGraphics() throws Exception {
+        return GRAPHICS_TYPE.getDeclaredConstructor().newInstance();
+    }
+    
+    /**
+     * Lay out item widgets in a grid inside a container widget
+     */
+    private static Widget container(Point location, int columns, int width, int height, int[] itemIds)
+        throws Exception {
+        Widget[] children = new Widget[itemIds.length];
+        for (int slot = 0; slot < itemIds.length; slot++) {
+            WidgetState child = new WidgetState();
+            child.index = slot;
+            child.itemId = itemIds[slot];
+            child.relativeX = (slot % columns) * 48;
+            child.relativeY = (slot / columns) * 36;
+            child.width = 36;
+            child.height = 32;
+            children[slot] = stub(WIDGET_TYPE, child);
+        }
+        
+        WidgetState container = new WidgetState();
+        container.canvasLocation = location;
+        container.width = width;
+        container.height = height;
+        container.dynamicChildren = children;
+        return stub(WIDGET_TYPE, container);
+    }
+    
+    /**
+     * Generate an implementation of an interface where every public method of the state type is delegated to
+     * the state object and every other abstract method returns a default value
+     */
+    private static <T> Class<? extends T> stubType(Class<T> type, Class<?> stateType) {
+        DynamicType.Builder<T> builder = new ByteBuddy()
+            .subclass(type)
+            .defineField("state", stateType, Visibility.PUBLIC)
+            .method(isAbstract()).intercept(StubMethod.INSTANCE);
+        
+        for (Method method : stateType.getDeclaredMethods()) {
+            if (!Modifier.isPublic(method.getModifiers()) || Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            builder = builder
+                .method(named(method.getName()).and(takesArguments(method.getParameterTypes())).and(isAbstract()))
+                .intercept(MethodDelegation.withDefaultConfiguration()
+                    .filter(named(method.getName()).and(takesArguments(method.getParameterTypes())))
+                    .toField("state"));
+        }
+        
+        return builder.make()
+            .load(OverlayFixtures.class.getClassLoader())
+            .getLoaded();
+    }
+    
+    private static <T> T stub(Class<? extends T> type, Object state) throws Exception {
+        T instance = type.getDeclaredConstructor().newInstance();
+        type.getField("state").set(instance, state);
+        return instance;
+    }
+    
+    /**
+     * Backing state of the stub client
+     */
+    public static final class ClientState {
+        Widget inventory;
+        Widget bank;
+        Point mouse;
+        
+        public Widget getWidget(int groupId, int childId) {
+            if (groupId == 149 && childId == 0) {
+                return inventory;
+            } else if (groupId == 12 && childId == 12) {
+                return bank;
+            }
+            return null;
+        }
+        
+        public Point getMouseCanvasPosition() {
+            return mouse;
+        }
+    }
+    
+    /**
+     * Backing state of a stub widget
+     */
+    public static final class WidgetState {
+        boolean hidden;
+        int index = -1;
+        int itemId = -1;
+        int relativeX;
+        int relativeY;
+        int width;
+        int height;
+        int scrollX;
+        int scrollY;
+        Point canvasLocation;
+        Widget[] dynamicChildren;
+        
+        public boolean isHidden() {
+            return hidden;
+        }
+        
+        public int getIndex() {
+            return index;
+        }
+        
+        public int getItemId() {
+            return itemId;
+        }
+        
+        public int getRelativeX() {
+            return relativeX;
+        }
+        
+        public int getRelativeY() {
+            return relativeY;
+        }
+        
+        public int getWidth() {
+            return width;
+        }
+        
+        public int getHeight() {
+            return height;
+        }
+        
+        public int getScrollX() {
+            return scrollX;
+        }
+        
+        public int getScrollY() {
+            return scrollY;
+        }
+        
+        public Point getCanvasLocation() {
+            return canvasLocation;
+        }
+        
+        public Widget[] getDynamicChildren() {
+            return dynamicChildren;
+        }
+    }
+}
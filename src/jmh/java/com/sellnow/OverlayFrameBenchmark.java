@@ -0,0 +1,59 @@
+package com.sellnow;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame cost of the overlay with a full inventory and an 800 slot bank, every item at its all-time high
+ * steadyFrame is the normal case; frameAfterChange also rebuilds the highlight index, as after a poll or
+ * container change
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OverlayFrameBenchmark {
+    
+    private OverlayFixtures fixtures;
+    private BufferedImage canvas;
+    private Graphics2D graphics;
+    
+    @Setup
+    public void setUp() throws Exception {
+        fixtures = new OverlayFixtures(LatestPayloads.synthetic(LatestPayloads.LIVE_ITEM_COUNT, 0));
+        canvas = new BufferedImage(765, 503, BufferedImage.TYPE_INT_ARGB);
+        graphics = canvas.createGraphics();
+    }
+    
+    @TearDown
+    public void tearDown() {
+        graphics.dispose();
+    }
+    
+    @Benchmark
+    public Dimension steadyFrame() {
+        return fixtures.overlay.render(graphics);
+    }
+    
+    @Benchmark
+    public Dimension frameAfterChange() {
+        fixtures.highlightIndex.invalidate();
+        return fixtures.overlay.render(graphics);
+    }
+}
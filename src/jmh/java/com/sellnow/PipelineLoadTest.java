@@ -0,0 +1,161 @@
+package com.sellnow;
+
+import okhttp3.OkHttpClient;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end load scenarios for the price pipeline against a local {@link ReplayServer}
+ * Each poll goes through OkHttp, gzip, {@link WikiPriceSource} and {@link GEPriceService} exactly as in the
+ * client, and is timed from the request until the new price table is published
+ * Run with gradle loadTest, optionally -PloadTest.scenario=name, -Psellnow.polls=n and
+ * -Psellnow.recording=/path/to/latest.json to replay a recorded response instead of a synthetic one
+ */
+public final class PipelineLoadTest {
+    
+    private static final Scenario[] SCENARIOS = {
+        new Scenario("live", 1, 0, 0, 0, true),
+        new Scenario("unchanged", 1, 0, 0, 0, false),
+        new Scenario("scale-10x", 10, 0, 0, 0, true),
+        new Scenario("scale-100x", 100, 0, 0, 0, true),
+        new Scenario("latency-250ms", 1, 250, 0, 0, true),
+        new Scenario("errors-20pct", 1, 0, 0.2, 0, true),
+        new Scenario("truncated-10pct", 1, 0, 0, 0.1, true)
+    };
+    
+    private PipelineLoadTest() {
+    }
+    
+    public static void main(String[] args) throws Exception {
+        String only = args.length > 0 ? args[0] : null;
+        int polls = Integer.getInteger("sellnow.polls", 50);
+        String recording = System.getProperty("sellnow.recording");
+        OkHttpClient httpClient = new OkHttpClient.Builder()
+            .readTimeout(30, TimeUnit.SECONDS)
+            .build();
+        
+        System.out.printf("%-16s %8s %6s %6s %9s %9s %9s %11s %8s %11s%n", "scenario", "items", "polls",
+            "failed", "p50 ms", "p99 ms", "max ms", "items/s", "MB/s", "mapping ms");
+        for (Scenario scenario : SCENARIOS) {
+            if (only == null || only.equals(scenario.name)) {
+                scenario.run(httpClient, recording, polls);
+            }
+        }
+    }
+    
+    private static final class Scenario {
+        private static final int WARMUP_POLLS = 5;
+        
+        private final String name;
+        private final int scale;
+        private final long latencyMillis;
+        private final double errorRate;
+        private final double truncateRate;
+        private final boolean changing;
+        
+        Scenario(String name, int scale, long latencyMillis, double errorRate, double truncateRate,
+                 boolean changing) {
+            this.name = name;
+            this.scale = scale;
+            this.latencyMillis = latencyMillis;
+            this.errorRate = errorRate;
+            this.truncateRate = truncateRate;
+            this.changing = changing;
+        }
+        
+        void run(OkHttpClient httpClient, String recording, int polls) throws IOException {
+            // Fewer polls for the big payloads, each of which takes far longer
+            polls = Math.max(5, polls / scale);
+            byte[][] payloads = {
+                LatestPayloads.load(recording, scale, 0),
+                LatestPayloads.load(recording, scale, 1)
+            };
+            
+            try (ReplayServer server = new ReplayServer()) {
+                server.setLatest(payloads);
+                server.setMapping(MappingPayloads.forLatest(payloads[0]));
+                
+                SellNowMetrics metrics = new SellNowMetrics();
+                WikiPriceSource source = new WikiPriceSource(httpClient, metrics, server.latestUrl());
+                GEPriceService priceService = BenchmarkServices.priceService(httpClient, server.mappingUrl(),
+                    source, metrics);
+                
+                long mappingStart = System.nanoTime();
+                priceService.loadItemNameMapping();
+                long mappingNanos = System.nanoTime() - mappingStart;
+                
+                // Warm up without faults, then measure with them
+                for (int i = 0; i < WARMUP_POLLS; i++) {
+                    poll(priceService, source, server, i);
+                }
+                metrics.reset();
+                server.setLatency(latencyMillis);
+                server.setErrorRate(errorRate);
+                server.setTruncateRate(truncateRate);
+                
+                long[] latencies = new long[polls];
+                int measured = 0;
+                int failed = 0;
+                long items = 0;
+                for (int i = 0; i < polls; i++) {
+                    long start = System.nanoTime();
+                    int changed = poll(priceService, source, server, WARMUP_POLLS + i);
+                    long elapsed = System.nanoTime() - start;
+                    if (changed == Integer.MIN_VALUE) {
+                        failed++;
+                        continue;
+                    }
+                    latencies[measured++] = elapsed;
+                    items += Math.max(changed, 0);
+                }
+                
+                report(latencies, measured, failed, items, metrics.getBytesReceived(),
+                    priceService.getTrackedItemCount(), mappingNanos);
+            }
+        }
+        
+        /**
+         * @return The number of items changed, -1 if nothing changed, or Integer.MIN_VALUE if the poll failed
+         */
+        private int poll(GEPriceService priceService, WikiPriceSource source, ReplayServer server, int index) {
+            server.useLatest(changing ? index % 2 : 0);
+            try {
+                return priceService.updateFrom(source, System.currentTimeMillis());
+            } catch (IOException | IllegalStateException | NumberFormatException e) {
+                return Integer.MIN_VALUE;
+            }
+        }
+        
+        private void report(long[] latencies, int measured, int failed, long items, long bytes, int tracked,
+                            long mappingNanos) {
+            Arrays.sort(latencies, 0, measured);
+            long total = 0;
+            for (int i = 0; i < measured; i++) {
+                total += latencies[i];
+            }
+            double seconds = total / 1e9;
+            
+            System.out.printf("%-16s %8d %6d %6d %9.1f %9.1f %9.1f %11.0f %8.1f %11.1f%n", name, tracked,
+                measured + failed, failed,
+                millis(percentile(latencies, measured, 0.5)),
+                millis(percentile(latencies, measured, 0.99)),
+                millis(measured > 0 ? latencies[measured - 1] : 0),
+                seconds > 0 ? items / seconds : 0,
+                seconds > 0 ? bytes / seconds / (1024 * 1024) : 0,
+                millis(mappingNanos));
+        }
+        
+        private static long percentile(long[] sorted, int count, double fraction) {
+            if (count == 0) {
+                return 0;
+            }
+            return sorted[Math.min(count - 1, (int) Math.ceil(fraction * count) - 1)];
+        }
+        
+        private static double millis(long nanos) {
+            return nanos / 1e6;
+        }
+    }
+}
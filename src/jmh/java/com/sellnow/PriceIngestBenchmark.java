@@ -0,0 +1,61 @@
+package com.sellnow;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse-and-update throughput of a full /latest poll through {@link GEPriceService}
+ * Two payloads with the same items but different trade times are alternated, so every poll changes every item
+ * Pass -p recording=/path/to/latest.json to use a recorded response instead of a synthetic one
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PriceIngestBenchmark {
+    
+    @Param({"1", "10", "100"})
+    public int scale;
+    
+    @Param({""})
+    public String recording;
+    
+    private final BenchmarkServices.PayloadSource source = new BenchmarkServices.PayloadSource();
+    private GEPriceService priceService;
+    private byte[][] payloads;
+    private int next;
+    
+    @Setup
+    public void setUp() throws IOException {
+        priceService = BenchmarkServices.priceService(source);
+        payloads = new byte[][]{
+            LatestPayloads.load(recording, scale, 0),
+            LatestPayloads.load(recording, scale, 1)
+        };
+    }
+    
+    @Benchmark
+    public int changedPoll() throws IOException {
+        next ^= 1;
+        return BenchmarkServices.ingest(priceService, source, payloads[next]);
+    }
+    
+    @Benchmark
+    public int unchangedPoll() throws IOException {
+        return BenchmarkServices.ingest(priceService, source, payloads[next]);
+    }
+}
@@ -0,0 +1,86 @@
+package com.sellnow;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the overlay's price lookups, alone and while a poller publishes new tables
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PriceLookupBenchmark {
+    
+    private final BenchmarkServices.PayloadSource source = new BenchmarkServices.PayloadSource();
+    private GEPriceService priceService;
+    private byte[][] payloads;
+    private int[] itemIds;
+    private int nextPayload;
+    
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+    
+    @Setup
+    public void setUp() throws IOException {
+        priceService = BenchmarkServices.priceService(source);
+        payloads = new byte[][]{
+            LatestPayloads.synthetic(LatestPayloads.LIVE_ITEM_COUNT, 0),
+            LatestPayloads.synthetic(LatestPayloads.LIVE_ITEM_COUNT, 1)
+        };
+        BenchmarkServices.ingest(priceService, source, payloads[0]);
+        
+        // A bank's worth of item IDs that exist in the table
+        PriceTable prices = priceService.getPriceTable();
+        itemIds = new int[1024];
+        for (int itemId = 0, count = 0; count < itemIds.length; itemId = (itemId + 1) % prices.getCapacity()) {
+            if (prices.hasPrice(itemId)) {
+                itemIds[count++] = itemId;
+            }
+        }
+    }
+    
+    @Benchmark
+    @Group("uncontended")
+    public boolean lookup(Cursor cursor) {
+        return lookupNext(cursor);
+    }
+    
+    @Benchmark
+    @Group("concurrent")
+    @GroupThreads(3)
+    public boolean lookupDuringWrites(Cursor cursor) {
+        return lookupNext(cursor);
+    }
+    
+    @Benchmark
+    @Group("concurrent")
+    @GroupThreads(1)
+    public int write() throws IOException {
+        nextPayload ^= 1;
+        return BenchmarkServices.ingest(priceService, source, payloads[nextPayload]);
+    }
+    
+    private boolean lookupNext(Cursor cursor) {
+        int itemId = itemIds[cursor.next++ & (itemIds.length - 1)];
+        PriceTable prices = priceService.getPriceTable();
+        return prices.isAtAllTimeHigh(itemId) && prices.getColorTier(itemId) > 0;
+    }
+}
@@ -0,0 +1,269 @@
+package com.sellnow;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.HttpUrl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local stand-in for the OSRS Wiki price API, replaying /latest, /mapping, /24h, /1h and /timeseries payloads
+ * Bodies are served gzipped with an ETag, as the wiki does, and latency, errors and truncated bodies can be
+ * injected into /latest responses. /timeseries requests can be throttled with a 429 or 503 and a Retry-After
+ */
+final class ReplayServer implements Closeable {
+    
+    private static final String BASE_PATH = "/api/v1/osrs/";
+    
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicInteger latestRequests = new AtomicInteger();
+    private final Map<String, Payload> averages = new ConcurrentHashMap<>();
+    private final Map<String, Payload> timeseries = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> timeseriesRequests = new ConcurrentHashMap<>();
+    private final AtomicInteger throttledRequests = new AtomicInteger();
+    
+    private volatile Payload[] latest = new Payload[0];
+    private volatile Payload current;
+    private volatile Payload mapping;
+    private volatile long latencyMillis;
+    private volatile double errorRate;
+    private volatile double truncateRate;
+    private volatile int throttleCode;
+    private volatile long throttleRetryAfterSeconds;
+    
+    ReplayServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(BASE_PATH + "latest", this::serveLatest);
+        server.createContext(BASE_PATH + "mapping", exchange -> {
+            try {
+                if (mapping == null) {
+                    exchange.sendResponseHeaders(404, -1);
+                } else {
+                    mapping.send(exchange, false);
+                }
+            } finally {
+                exchange.close();
+            }
+        });
+        for (String period : new String[]{"24h", "1h"}) {
+            server.createContext(BASE_PATH + period, exchange -> serveBackfill(exchange, averages.get(period), false));
+        }
+        server.createContext(BASE_PATH + "timeseries", exchange -> {
+            String itemId = queryParameter(exchange, "id");
+            timeseriesRequests.computeIfAbsent(itemId, id -> new AtomicInteger()).incrementAndGet();
+            serveBackfill(exchange, timeseries.get(itemId), true);
+        });
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "sell-now-replay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+    
+    HttpUrl latestUrl() {
+        return url("latest");
+    }
+    
+    HttpUrl mappingUrl() {
+        return url("mapping");
+    }
+    
+    /**
+     * Base of the stand-in API, as used by {@link AthBackfillService}
+     */
+    HttpUrl baseUrl() {
+        return url("");
+    }
+    
+    private HttpUrl url(String endpoint) {
+        InetSocketAddress address = server.getAddress();
+        return HttpUrl.get("http://" + address.getHostString() + ":" + address.getPort() + BASE_PATH + endpoint);
+    }
+    
+    /**
+     * Set the /latest bodies to choose between with {@link #useLatest}, compressing them up front
+     */
+    void setLatest(byte[]... bodies) throws IOException {
+        Payload[] payloads = new Payload[bodies.length];
+        for (int i = 0; i < bodies.length; i++) {
+            payloads[i] = new Payload(bodies[i]);
+        }
+        latest = payloads;
+        current = payloads.length > 0 ? payloads[0] : null;
+    }
+    
+    void useLatest(int index) {
+        current = latest[index];
+    }
+    
+    void setMapping(byte[] body) throws IOException {
+        mapping = new Payload(body);
+    }
+    
+    /**
+     * Delay every /latest response by this long before its headers are sent
+     */
+    void setLatency(long millis) {
+        latencyMillis = millis;
+    }
+    
+    /**
+     * Answer this fraction of /latest requests with a 503 and a Retry-After header
+     */
+    void setErrorRate(double rate) {
+        errorRate = rate;
+    }
+    
+    /**
+     * Disconnect partway through this fraction of /latest bodies
+     */
+    void setTruncateRate(double rate) {
+        truncateRate = rate;
+    }
+    
+    int getLatestRequests() {
+        return latestRequests.get();
+    }
+    
+    /**
+     * Set the /24h or /1h body, which is answered with a 404 until set
+     */
+    void setAverages(String period, byte[] body) throws IOException {
+        averages.put(period, new Payload(body));
+    }
+    
+    /**
+     * Set an item's /timeseries body, which is answered with a 404 until set
+     */
+    void setTimeseries(int itemId, byte[] body) throws IOException {
+        timeseries.put(Integer.toString(itemId), new Payload(body));
+    }
+    
+    /**
+     * Answer the next /timeseries requests with this status, e.g. 429 or 503, and a Retry-After header
+     */
+    void throttleTimeseries(int requests, int code, long retryAfterSeconds) {
+        throttleCode = code;
+        throttleRetryAfterSeconds = retryAfterSeconds;
+        throttledRequests.set(requests);
+    }
+    
+    /**
+     * Count the /timeseries requests for an item, throttled ones included
+     */
+    int getTimeseriesRequests(int itemId) {
+        AtomicInteger requests = timeseriesRequests.get(Integer.toString(itemId));
+        return requests != null ? requests.get() : 0;
+    }
+    
+    private void serveLatest(HttpExchange exchange) throws IOException {
+        try {
+            latestRequests.incrementAndGet();
+            if (latencyMillis > 0) {
+                try {
+                    Thread.sleep(latencyMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            
+            Payload payload = current;
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (payload == null || random.nextDouble() < errorRate) {
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                exchange.sendResponseHeaders(503, -1);
+            } else if (payload.eTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.getResponseHeaders().add("ETag", payload.eTag);
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                payload.send(exchange, random.nextDouble() < truncateRate);
+            }
+        } finally {
+            // Closing a body that is shorter than its Content-Length drops the connection
+            exchange.close();
+        }
+    }
+    
+    private void serveBackfill(HttpExchange exchange, Payload payload, boolean throttled) throws IOException {
+        try {
+            if (throttled && throttledRequests.getAndUpdate(remaining -> Math.max(0, remaining - 1)) > 0) {
+                exchange.getResponseHeaders().add("Retry-After", Long.toString(throttleRetryAfterSeconds));
+                exchange.sendResponseHeaders(throttleCode, -1);
+            } else if (payload == null) {
+                exchange.sendResponseHeaders(404, -1);
+            } else {
+                payload.send(exchange, false);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    private static String queryParameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.startsWith(name + "=")) {
+                    return parameter.substring(name.length() + 1);
+                }
+            }
+        }
+        return "";
+    }
+    
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+    
+    /**
+     * A gzipped body and its ETag
+     */
+    private static final class Payload {
+        private final byte[] body;
+        private final String eTag;
+        
+        Payload(byte[] raw) throws IOException {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 4);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(raw);
+            }
+            body = compressed.toByteArray();
+            
+            CRC32 crc = new CRC32();
+            crc.update(raw);
+            eTag = "\"" + Long.toHexString(crc.getValue()) + "-" + raw.length + "\"";
+        }
+        
+        /**
+         * Send the body, or only half of it while promising all of it
+         */
+        void send(HttpExchange exchange, boolean truncate) throws IOException {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            exchange.getResponseHeaders().add("ETag", eTag);
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body, 0, truncate ? body.length / 2 : body.length);
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.sellnow;
+
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.RuneLite;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Persistent all-time high store, kept in a memory-mapped file in the RuneLite directory
+ * The file holds one fixed-size record per item ID (all-time high, when it was reached and the
+ * last seen price), so it can be read straight into a {@link PriceTable} at startup and updated
+ * in place as new prices arrive
+ */
+@Slf4j
+@Singleton
+public class AllTimeHighStore {
+    
+    private static final int MAGIC = 0x534E4154; // "SNAT"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 24;
+    private static final int MIN_CAPACITY = 32_768;
+    
+    private final File file;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private boolean failed;
+    
+    @Inject
+    public AllTimeHighStore() {
+        this(new File(new File(RuneLite.RUNELITE_DIR, "sell-now"), "all-time-highs.dat"));
+    }
+    
+    AllTimeHighStore(File file) {
+        this.file = file;
+    }
+    
+    /**
+     * Map the store read-only and build a price table from it
+     * @return The persisted prices, or an empty table if there is no usable store
+     */
+    public PriceTable load() {
+        if (!file.isFile()) {
+            return PriceTable.EMPTY;
+        }
+        
+        try (FileChannel readChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = readChannel.size();
+            if (size < HEADER_SIZE) {
+                return PriceTable.EMPTY;
+            }
+            
+            MappedByteBuffer map = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+                log.warn("Ignoring all-time high store with unknown format: {}", file);
+                return PriceTable.EMPTY;
+            }
+            
+            int records = (int) Math.min(map.getInt(8), (size - HEADER_SIZE) / RECORD_SIZE);
+            PriceTable table = PriceTable.EMPTY.copy();
+            for (int itemId = 0; itemId < records; itemId++) {
+                int offset = HEADER_SIZE + itemId * RECORD_SIZE;
+                long allTimeHigh = map.getLong(offset);
+                if (allTimeHigh > 0) {
+                    table.restore(itemId, map.getLong(offset + 16), allTimeHigh, map.getLong(offset + 8));
+                }
+            }
+            
+            log.debug("Loaded {} all-time highs from {}", table.getItemCount(), file);
+            return table;
+        } catch (IOException e) {
+            log.warn("Unable to read all-time high store", e);
+            return PriceTable.EMPTY;
+        }
+    }
+    
+    /**
+     * Write an item's record in place
+     * Called from the price update thread, or from whichever thread merges historical highs while updates are stopped
+     */
+    synchronized void write(int itemId, long price, long allTimeHigh, long allTimeHighTime) {
+        if (failed || itemId < 0) {
+            return;
+        }
+        
+        try {
+            ensureCapacity(itemId + 1);
+        } catch (IOException e) {
+            // Keep tracking in memory, just stop trying to persist this session
+            log.warn("Unable to write all-time high store, highs will not persist", e);
+            failed = true;
+            return;
+        }
+        
+        int offset = HEADER_SIZE + itemId * RECORD_SIZE;
+        buffer.putLong(offset, allTimeHigh);
+        buffer.putLong(offset + 8, allTimeHighTime);
+        buffer.putLong(offset + 16, price);
+    }
+    
+    private void ensureCapacity(int required) throws IOException {
+        if (buffer != null && required <= capacity) {
+            return;
+        }
+        
+        if (channel == null) {
+            File dir = file.getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Unable to create " + dir);
+            }
+            channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            
+            long existing = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+            if (channel.size() >= HEADER_SIZE) {
+                MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+                if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                    // Unknown format, start over rather than misread it
+                    channel.truncate(0);
+                    existing = 0;
+                }
+            }
+            capacity = (int) Math.max(0, existing);
+        }
+        
+        int newCapacity = Math.max(Math.max(required, capacity), MIN_CAPACITY);
+        if (buffer != null) {
+            newCapacity = Math.max(newCapacity, capacity + (capacity >> 1));
+        }
+        
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) newCapacity * RECORD_SIZE);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, newCapacity);
+        capacity = newCapacity;
+    }
+    
+    /**
+     * Flush pending writes and release the file
+     */
+    public synchronized void close() {
+        try {
+            if (buffer != null) {
+                buffer.force();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            log.warn("Error closing all-time high store", e);
+        } finally {
+            buffer = null;
+            channel = null;
+            capacity = 0;
+        }
+    }
+}
@@ -0,0 +1,453 @@
+package com.sellnow;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.RuneLite;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Seeds historical all-time highs from the OSRS Wiki /24h, /1h and /timeseries endpoints
+ * Runs a small, fixed number of requests in parallel on its own threads, spaced out to stay well
+ * under the wiki's rate limits. The bulk averages cover every item, per-item history is only fetched
+ * for items in the {@link InterestSet}. Finished items are checkpointed to disk so an interrupted
+ * backfill resumes where it left off
+ */
+@Slf4j
+@Singleton
+public class AthBackfillService {
+    
+    private static final String OSRS_WIKI_BASE = "https://prices.runescape.wiki/api/v1/osrs/";
+    private static final int MAX_CONCURRENT_REQUESTS = 4;
+    private static final long REQUEST_SPACING_MILLIS = 250;
+    private static final long DEFAULT_RETRY_AFTER_SECONDS = 60;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int MERGE_BATCH_SIZE = 50;
+    private static final int CHECKPOINT_INTERVAL = 100;
+    
+    // Lower values are taken from the queue first
+    private static final long PRIORITY_HELD = 0;
+    private static final long PRIORITY_RETRY = 2;
+    
+    private final OkHttpClient httpClient;
+    private final GEPriceService priceService;
+    private final InterestSet interestSet;
+    private final HttpUrl baseUrl;
+    private final File checkpointFile;
+    
+    private final PriorityBlockingQueue<Long> queue = new PriorityBlockingQueue<>();
+    private final AtomicLong nextRequestAt = new AtomicLong();
+    private final AtomicInteger generation = new AtomicInteger();
+    private final PriceUpdateBatch pending = new PriceUpdateBatch(MERGE_BATCH_SIZE);
+    
+    // Guarded by this
+    private final BitSet completed = new BitSet();
+    private final BitSet queued = new BitSet();
+    private final BitSet inFlight = new BitSet();
+    private final int[] attempts = new int[65_536];
+    private int completedSinceCheckpoint;
+    
+    private ExecutorService executor;
+    
+    @Inject
+    public AthBackfillService(OkHttpClient httpClient, GEPriceService priceService, InterestSet interestSet) {
+        this(httpClient, priceService, interestSet, HttpUrl.get(OSRS_WIKI_BASE),
+            new File(new File(RuneLite.RUNELITE_DIR, "sell-now"), "backfill.dat"));
+    }
+    
+    /**
+     * @param baseUrl Base of the price API, so the backfill can be pointed at a local stand-in
+     */
+    AthBackfillService(OkHttpClient httpClient, GEPriceService priceService, InterestSet interestSet,
+                       HttpUrl baseUrl, File checkpointFile) {
+        this.httpClient = httpClient;
+        this.priceService = priceService;
+        this.interestSet = interestSet;
+        this.baseUrl = baseUrl;
+        this.checkpointFile = checkpointFile;
+    }
+    
+    /**
+     * Start backfilling in the background
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        
+        loadCheckpoint();
+        int startedGeneration = generation.incrementAndGet();
+        executor = Executors.newFixedThreadPool(MAX_CONCURRENT_REQUESTS, runnable -> {
+            Thread thread = new Thread(runnable, "sell-now-backfill");
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        // One cheap bulk pass first, then per-item history
+        executor.submit(() -> seedFromAverages(startedGeneration));
+        for (int i = 0; i < MAX_CONCURRENT_REQUESTS; i++) {
+            executor.submit(() -> runWorker(startedGeneration));
+        }
+    }
+    
+    /**
+     * Stop backfilling, keeping what has been fetched so far
+     */
+    public void stop() {
+        synchronized (this) {
+            if (executor == null) {
+                return;
+            }
+            generation.incrementAndGet();
+            executor.shutdownNow();
+            executor = null;
+            queue.clear();
+            queued.clear();
+            inFlight.clear();
+        }
+        
+        // Highs fetched before stopping are still merged and checkpointed
+        flushPending();
+        synchronized (this) {
+            saveCheckpoint();
+        }
+    }
+    
+    /**
+     * Queue items for backfill ahead of retries, e.g. because they just entered the player's inventory or bank
+     * Does nothing while the backfill is stopped, it queues held items itself once started
+     */
+    public synchronized void prioritize(int[] itemIds) {
+        if (executor == null) {
+            return;
+        }
+        for (int itemId : itemIds) {
+            // Items already queued, waiting for a retry or out of attempts are left where they are
+            if (itemId > 0 && itemId < attempts.length && !completed.get(itemId) && !queued.get(itemId)) {
+                queued.set(itemId);
+                queue.offer(key(PRIORITY_HELD, itemId));
+            }
+        }
+    }
+    
+    private void seedFromAverages(int startedGeneration) {
+        for (String period : new String[]{"24h", "1h"}) {
+            if (generation.get() != startedGeneration) {
+                return;
+            }
+            
+            HttpUrl url = baseUrl.newBuilder().addPathSegment(period).build();
+            PriceUpdateBatch averages = new PriceUpdateBatch(8192);
+            long[] periodStart = new long[1];
+            try (Response response = execute(url)) {
+                if (response == null) {
+                    return;
+                }
+                if (!response.isSuccessful() || response.body() == null) {
+                    log.debug("Skipping /{} seed, HTTP {}", period, response.code());
+                    continue;
+                }
+                try (JsonReader reader = new JsonReader(
+                    new InputStreamReader(response.body().byteStream(), StandardCharsets.UTF_8))) {
+                    LatestPricesParser.parse(reader, (itemId, high, highTime, low, lowTime) -> {
+                        if (high > 0) {
+                            averages.accept(itemId, high, 0, 0, 0);
+                        }
+                    }, periodStart);
+                }
+            } catch (IOException | IllegalStateException | NumberFormatException e) {
+                log.debug("Error seeding highs from /{}", period, e);
+                continue;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            
+            if (generation.get() == startedGeneration) {
+                // An average was reached some time in its period, the start is the closest known time.
+                // The timestamp follows the data, so the highs are only stamped once it has been read
+                PriceUpdateBatch batch = new PriceUpdateBatch(averages.size());
+                for (int i = 0; i < averages.size(); i++) {
+                    batch.accept(averages.getItemId(i), averages.getHigh(i), periodStart[0], 0, 0);
+                }
+                priceService.mergeHistoricalHighs(batch);
+                log.debug("Seeded {} highs from /{}", batch.size(), period);
+            }
+        }
+    }
+    
+    private void runWorker(int startedGeneration) {
+        try {
+            while (generation.get() == startedGeneration) {
+                Long next = queue.poll(5, TimeUnit.SECONDS);
+                if (next == null) {
+                    flushPending();
+                    if (!enqueueHeldItems()) {
+                        // Nothing left for now, check again for newly held items later
+                        Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+                    }
+                    continue;
+                }
+                
+                int itemId = (int) (next & 0xFFFFFFFFL);
+                synchronized (this) {
+                    if (completed.get(itemId) || inFlight.get(itemId)) {
+                        continue;
+                    }
+                    inFlight.set(itemId);
+                }
+                
+                backfillItem(itemId, startedGeneration);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void backfillItem(int itemId, int startedGeneration) throws InterruptedException {
+        HttpUrl url = baseUrl.newBuilder()
+            .addPathSegment("timeseries")
+            .addQueryParameter("timestep", "24h")
+            .addQueryParameter("id", Integer.toString(itemId))
+            .build();
+        
+        long[] highest = new long[2];
+        try (Response response = execute(url)) {
+            if (response == null) {
+                // Rate limited, execute has already pushed the next request back
+                requeue(itemId);
+                return;
+            }
+            if (response.code() == 404) {
+                // No history for this item, nothing to retry
+                markCompleted(itemId);
+                return;
+            }
+            if (!response.isSuccessful() || response.body() == null) {
+                retryLater(itemId);
+                return;
+            }
+            try (JsonReader reader = new JsonReader(
+                new InputStreamReader(response.body().byteStream(), StandardCharsets.UTF_8))) {
+                readHighest(reader, highest);
+            }
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            log.debug("Error backfilling item {}", itemId, e);
+            retryLater(itemId);
+            return;
+        }
+        
+        if (generation.get() != startedGeneration) {
+            return;
+        }
+        
+        if (highest[0] <= 0) {
+            markCompleted(itemId);
+            return;
+        }
+        
+        // Items are only marked completed once their high has been merged, see flushPending
+        boolean flush;
+        synchronized (pending) {
+            pending.accept(itemId, highest[0], highest[1], 0, 0);
+            flush = pending.size() >= MERGE_BATCH_SIZE;
+        }
+        if (flush) {
+            flushPending();
+        }
+    }
+    
+    /**
+     * Execute a request once a rate limit slot is free
+     * @return The response, or null if the backfill was interrupted or is being rate limited
+     */
+    private Response execute(HttpUrl url) throws IOException, InterruptedException {
+        while (true) {
+            long now = System.currentTimeMillis();
+            long slot = nextRequestAt.get();
+            long start = Math.max(now, slot);
+            if (nextRequestAt.compareAndSet(slot, start + REQUEST_SPACING_MILLIS)) {
+                if (start > now) {
+                    Thread.sleep(start - now);
+                }
+                break;
+            }
+        }
+        
+        Request request = new Request.Builder()
+            .url(url)
+            .header("User-Agent", "RuneLite Sell-Now Plugin")
+            .build();
+        Response response = httpClient.newCall(request).execute();
+        
+        if (response.code() == 429 || response.code() == 503) {
+            long retryAfterSeconds = parseRetryAfter(response.header("Retry-After"));
+            log.debug("Rate limited by price API, pausing backfill for {}s", retryAfterSeconds);
+            nextRequestAt.accumulateAndGet(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(retryAfterSeconds),
+                Math::max);
+            response.close();
+            return null;
+        }
+        return response;
+    }
+    
+    static long parseRetryAfter(String header) {
+        if (header != null) {
+            try {
+                return Math.max(1, Long.parseLong(header.trim()));
+            } catch (NumberFormatException e) {
+                // HTTP-date form, fall back to the default
+            }
+        }
+        return DEFAULT_RETRY_AFTER_SECONDS;
+    }
+    
+    /**
+     * Find the highest average high price in a /timeseries response
+     * @param highest Receives the price and its timestamp (epoch seconds)
+     */
+    static void readHighest(JsonReader reader, long[] highest) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!"data".equals(reader.nextName()) || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                reader.skipValue();
+                continue;
+            }
+            
+            reader.beginArray();
+            while (reader.hasNext()) {
+                long timestamp = 0;
+                long high = 0;
+                
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                    } else if ("timestamp".equals(name)) {
+                        timestamp = reader.nextLong();
+                    } else if ("avgHighPrice".equals(name)) {
+                        high = reader.nextLong();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                
+                if (high > highest[0]) {
+                    highest[0] = high;
+                    highest[1] = timestamp;
+                }
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+    }
+    
+    /**
+     * Queue held items that have no backfill yet, picking up anything held before the backfill started
+     * @return true if anything was queued
+     */
+    private synchronized boolean enqueueHeldItems() {
+        BitSet held = interestSet.getItems();
+        boolean added = false;
+        for (int itemId = held.nextSetBit(1); itemId > 0 && itemId < attempts.length;
+             itemId = held.nextSetBit(itemId + 1)) {
+            if (!completed.get(itemId) && !queued.get(itemId) && attempts[itemId] < MAX_ATTEMPTS) {
+                queued.set(itemId);
+                queue.offer(key(PRIORITY_HELD, itemId));
+                added = true;
+            }
+        }
+        return added;
+    }
+    
+    private synchronized void retryLater(int itemId) {
+        // Items that run out of attempts stay marked as queued so they are not picked up again this session
+        inFlight.clear(itemId);
+        if (++attempts[itemId] < MAX_ATTEMPTS) {
+            queue.offer(key(PRIORITY_RETRY, itemId));
+        }
+    }
+    
+    /**
+     * Queue an item again without counting an attempt, for when the API was throttling rather than failing
+     */
+    private synchronized void requeue(int itemId) {
+        inFlight.clear(itemId);
+        queue.offer(key(PRIORITY_RETRY, itemId));
+    }
+    
+    private synchronized void markCompleted(int itemId) {
+        completed.set(itemId);
+        inFlight.clear(itemId);
+        queued.clear(itemId);
+        if (++completedSinceCheckpoint >= CHECKPOINT_INTERVAL) {
+            saveCheckpoint();
+        }
+    }
+    
+    private void flushPending() {
+        synchronized (pending) {
+            if (pending.size() > 0) {
+                priceService.mergeHistoricalHighs(pending);
+                for (int i = 0; i < pending.size(); i++) {
+                    markCompleted(pending.getItemId(i));
+                }
+                pending.clear();
+            }
+        }
+    }
+    
+    private static long key(long priority, int itemId) {
+        return priority << 32 | itemId;
+    }
+    
+    private void loadCheckpoint() {
+        if (!checkpointFile.isFile()) {
+            return;
+        }
+        try {
+            completed.clear();
+            completed.or(BitSet.valueOf(Files.readAllBytes(checkpointFile.toPath())));
+            log.debug("Resuming backfill with {} items already done", completed.cardinality());
+        } catch (IOException e) {
+            log.warn("Unable to read backfill checkpoint", e);
+        }
+    }
+    
+    private void saveCheckpoint() {
+        // Only called with this held
+        completedSinceCheckpoint = 0;
+        try {
+            File dir = checkpointFile.getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Unable to create " + dir);
+            }
+            File temp = new File(dir, checkpointFile.getName() + ".tmp");
+            Files.write(temp.toPath(), completed.toByteArray());
+            Files.move(temp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.warn("Unable to write backfill checkpoint", e);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.sellnow;
+
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.Notifier;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends notifications for held items reaching their all-time high and for watchlist alerts, batched per update
+ * Transitions from each {@link PriceDeltaEvent} are collected for a few seconds and sent as one message, so a
+ * volatile poll, or the fallback and wiki updates of one poll, notify once. After notifying, an item stays quiet
+ * for an hour and until its price has fallen 2% below the high it notified at, so a price hovering at its high
+ * does not notify again. Messages are built and sent on a thread of its own, never the client thread
+ */
+@Slf4j
+@Singleton
+class AthNotifier {
+    
+    private static final long DEBOUNCE_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    private static final long COOLDOWN_MILLIS = TimeUnit.HOURS.toMillis(1);
+    // How far below the notified high, in percent, a price must fall before the item can notify again
+    private static final int REARM_PERCENT = 2;
+    private static final int MAX_NAMED_ITEMS = 5;
+    
+    private final Notifier notifier;
+    private final GEPriceService priceService;
+    private final InterestSet interestSet;
+    private final Watchlist watchlist;
+    // Only used on the notifier thread
+    private final NumberFormat numberFormat = NumberFormat.getInstance(Locale.US);
+    
+    // Guarded by this
+    private ScheduledExecutorService executor;
+    private boolean notifyHighs;
+    private PriceTable previous;
+    private boolean flushScheduled;
+    private final Set<Integer> pendingHighs = new LinkedHashSet<>();
+    private final Set<Integer> pendingAlerts = new LinkedHashSet<>();
+    private final Map<Integer, Quiet> quiet = new HashMap<>();
+    
+    @Inject
+    AthNotifier(Notifier notifier, GEPriceService priceService, InterestSet interestSet, Watchlist watchlist) {
+        this.notifier = notifier;
+        this.priceService = priceService;
+        this.interestSet = interestSet;
+        this.watchlist = watchlist;
+    }
+    
+    /**
+     * Start collecting transitions, judging the first update against the current prices
+     * @param notifyHighs Whether held items reaching their all-time high notify, watchlist alerts always do
+     */
+    synchronized void start(boolean notifyHighs) {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sell-now-notifier");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.notifyHighs = notifyHighs;
+        previous = priceService.getPriceTable();
+    }
+    
+    /**
+     * Stop and drop anything not yet sent
+     */
+    synchronized void stop() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdownNow();
+        executor = null;
+        previous = null;
+        flushScheduled = false;
+        pendingHighs.clear();
+        pendingAlerts.clear();
+        quiet.clear();
+    }
+    
+    synchronized void setNotifyHighs(boolean notifyHighs) {
+        this.notifyHighs = notifyHighs;
+        if (!notifyHighs) {
+            pendingHighs.clear();
+        }
+    }
+    
+    /**
+     * Collect the transitions of an applied update, callable from any thread
+     */
+    synchronized void offer(PriceDeltaEvent event) {
+        PriceTable prices = event.getPrices();
+        PriceTable before = previous;
+        previous = prices;
+        if (executor == null) {
+            return;
+        }
+        
+        long now = System.currentTimeMillis();
+        for (Iterator<Quiet> it = quiet.values().iterator(); it.hasNext(); ) {
+            Quiet entry = it.next();
+            long price = prices.getCurrentPrice(entry.itemId);
+            entry.fell |= price > 0 && price * 100 < entry.high * (100 - REARM_PERCENT);
+            if (entry.fell && now - entry.time >= COOLDOWN_MILLIS) {
+                it.remove();
+            }
+        }
+        
+        if (notifyHighs) {
+            for (int itemId : event.getReachedAllTimeHigh()) {
+                // Without an earlier price the item was only just seen, as on the first poll without saved highs
+                if (!interestSet.contains(itemId) || before == null || before.getCurrentPrice(itemId) <= 0
+                    || quiet.containsKey(itemId)) {
+                    continue;
+                }
+                quiet.put(itemId, new Quiet(itemId, prices.getAllTimeHigh(itemId), now));
+                pendingHighs.add(itemId);
+            }
+        }
+        for (int itemId : watchlist.check(prices)) {
+            pendingAlerts.add(itemId);
+        }
+        
+        if (!flushScheduled && (!pendingHighs.isEmpty() || !pendingAlerts.isEmpty())) {
+            flushScheduled = true;
+            executor.schedule(this::flush, DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    /**
+     * Send everything collected as one message, against the latest prices
+     */
+    private void flush() {
+        PriceTable prices = priceService.getPriceTable();
+        List<Integer> highs = new ArrayList<>();
+        List<Integer> alerts;
+        synchronized (this) {
+            flushScheduled = false;
+            for (int itemId : pendingHighs) {
+                if (pendingAlerts.contains(itemId)) {
+                    continue;
+                }
+                if (prices.isAtAllTimeHigh(itemId)) {
+                    highs.add(itemId);
+                } else {
+                    // Fell back within the debounce, it has not notified so may do so later
+                    quiet.remove(itemId);
+                }
+            }
+            alerts = new ArrayList<>(pendingAlerts);
+            pendingHighs.clear();
+            pendingAlerts.clear();
+        }
+        
+        List<String> parts = new ArrayList<>();
+        if (highs.size() == 1) {
+            parts.add(itemName(highs.get(0)) + " is at its all-time high of " + formatPrice(prices, highs.get(0)));
+        } else if (!highs.isEmpty()) {
+            parts.add(highs.size() + " items at their all-time high: " + listItems(highs, prices));
+        }
+        if (alerts.size() == 1) {
+            int itemId = alerts.get(0);
+            parts.add(itemName(itemId) + (watchlist.getAlertPrice(itemId) > 0
+                ? " reached your alert price at " : " is at its all-time high of ") + formatPrice(prices, itemId));
+        } else if (!alerts.isEmpty()) {
+            parts.add(alerts.size() + " watchlist alerts: " + listItems(alerts, prices));
+        }
+        if (!parts.isEmpty()) {
+            log.debug("Notifying {} all-time highs and {} watchlist alerts", highs.size(), alerts.size());
+            notifier.notify(String.join(". ", parts));
+        }
+    }
+    
+    private String listItems(List<Integer> itemIds, PriceTable prices) {
+        StringBuilder list = new StringBuilder();
+        for (int i = 0; i < itemIds.size() && i < MAX_NAMED_ITEMS; i++) {
+            if (i > 0) {
+                list.append(", ");
+            }
+            list.append(itemName(itemIds.get(i))).append(" (").append(formatPrice(prices, itemIds.get(i))).append(')');
+        }
+        if (itemIds.size() > MAX_NAMED_ITEMS) {
+            list.append(" and ").append(itemIds.size() - MAX_NAMED_ITEMS).append(" more");
+        }
+        return list.toString();
+    }
+    
+    private String itemName(int itemId) {
+        String name = priceService.getItemName(itemId);
+        return name != null ? name : "Item " + itemId;
+    }
+    
+    private String formatPrice(PriceTable prices, int itemId) {
+        return numberFormat.format(prices.getCurrentPrice(itemId)) + " gp";
+    }
+    
+    /**
+     * An item that notified, quiet until its cooldown has passed and its price has fallen below the high
+     */
+    private static final class Quiet {
+        private final int itemId;
+        private final long high;
+        private final long time;
+        private boolean fell;
+        
+        Quiet(int itemId, long high, long time) {
+            this.itemId = itemId;
+            this.high = high;
+            this.time = time;
+        }
+    }
+}
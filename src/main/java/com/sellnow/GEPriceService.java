@@ -1,8 +1,10 @@
 package com.sellnow;
 
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.eventbus.EventBus;
+import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
@@ -10,11 +12,23 @@ import okhttp3.Response;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.io.IOException;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 /**
  * Service to fetch and manage Grand Exchange prices from various sources
@@ -23,169 +37,1098 @@ import java.util.concurrent.TimeUnit;
 @Singleton
 public class GEPriceService {
     
-    private static final String OSRS_WIKI_API = "https://prices.runescape.wiki/api/v1/osrs/latest";
     private static final String OSRS_WIKI_MAPPING = "https://prices.runescape.wiki/api/v1/osrs/mapping";
-    private static final long DEFAULT_UPDATE_INTERVAL_MINUTES = 5;
+    private static final long MIN_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    
+    // Bounds for how long to wait on the primary source before also asking the fallback
+    private static final long DEFAULT_HEDGE_DELAY_MILLIS = 3000;
+    private static final long MIN_HEDGE_DELAY_MILLIS = 500;
+    private static final long MAX_HEDGE_DELAY_MILLIS = 5000;
+    
+    // How often a client following the shared cache checks for a new version or a missing leader
+    private static final long FOLLOW_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    private static final String SHARED_SOURCE_NAME = "Shared cache";
+    
+    // Shortest time from the start of one poll to a manual refresh, to respect API rate limits
+    private static final long MIN_REFRESH_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    
+    // How long restarted updates wait for the threads of stopped ones to finish their last fetch
+    private static final long RETIRED_WAIT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    
+    // How far an own trade may be from the known prices, as a factor, before it is taken as an outlier
+    private static final long OWN_TRADE_TOLERANCE = 3;
     
     private final OkHttpClient httpClient;
-    private final Map<Integer, ItemPriceData> priceCache;
-    private final Map<Integer, String> itemNameCache;
-    private ScheduledFuture<?> priceUpdateTask;
+    private final HttpUrl mappingUrl;
+    private final PriceSource primarySource;
+    private final PriceSource fallbackSource;
+    private final SourceHealth primaryHealth;
+    private final SourceHealth fallbackHealth;
+    private final AllTimeHighStore allTimeHighStore;
+    private final PriceHistoryStore historyStore;
+    private final SharedPriceCache sharedCache;
+    private final ItemMappingCache itemMappingCache;
+    private final SellNowMetrics metrics;
+    private final InterestSet interestSet;
+    private final EventBus eventBus;
+    private final AtomicReference<PriceTable> priceTable;
+    private final PriceUpdateBatch latestBatch;
+    private final PriceUpdateBatch fallbackBatch;
+    private final PriceStatistics statistics;
+    private int[] changedEntries;
+    private final PriceDeltaEvent.Builder latestDelta;
+    // Only touched on the price update thread, by own trades
+    private final PriceDeltaEvent.Builder tradeDelta;
+    // Own trades waiting for the price update thread, guarded by this
+    private final List<OwnTrade> pendingTrades = new ArrayList<>();
+    // Only touched on the price update thread, by historical highs
+    private final PriceDeltaEvent.Builder mergeDelta;
+    // Historical highs waiting for the price update thread, guarded by this
+    private final List<PriceUpdateBatch> pendingMerges = new ArrayList<>();
+    private int statisticsInterestVersion = -1;
+    private volatile ItemNameIndex itemNames = ItemNameIndex.EMPTY;
+    
+    // Bumped whenever updates start or stop, so a poll that finishes afterwards is discarded
+    private final AtomicInteger generation = new AtomicInteger();
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> nextPoll;
+    // Whether the pending poll is a regular one, which an interval change reschedules
+    private boolean regularPollPending;
+    // The poll running now and a refresh waiting to run, shared by every caller that asks meanwhile
+    private CompletableFuture<SellNowMetrics.PollOutcome> runningPoll;
+    private CompletableFuture<SellNowMetrics.PollOutcome> queuedRefresh;
+    private SellNowMetrics.PollOutcome lastOutcome = SellNowMetrics.PollOutcome.UNCHANGED;
+    private long refreshNotBefore;
+    // Runs primary fetches, so the price update thread can hedge while one is slow
+    private volatile ExecutorService fetchExecutor;
+    // Executors of stopped updates, whose last fetch may still be writing into the sources and batches
+    private final List<ExecutorService> retiredExecutors = new ArrayList<>();
+    
+    // Only touched on the price update thread
+    private final PollScheduler scheduler = new PollScheduler();
+    private int consecutiveFailures;
+    private long retryAfterMillis;
     
     @Inject
-    public GEPriceService(OkHttpClient httpClient) {
+    public GEPriceService(OkHttpClient httpClient, WikiPriceSource wikiSource, ItemManagerPriceSource itemManagerSource,
+                          AllTimeHighStore allTimeHighStore, PriceHistoryStore historyStore,
+                          SharedPriceCache sharedCache, ItemMappingCache itemMappingCache, SellNowMetrics metrics,
+                          InterestSet interestSet, EventBus eventBus) {
+        this(httpClient, HttpUrl.get(OSRS_WIKI_MAPPING), wikiSource, itemManagerSource, allTimeHighStore,
+            historyStore, sharedCache, itemMappingCache, metrics, interestSet, eventBus);
+    }
+    
+    /**
+     * @param mappingUrl Where item names are loaded from, so they can be served by a local stand-in
+     * @param primarySource Where prices normally come from
+     * @param fallbackSource Where prices come from while the primary is slow or failing, or null for none
+     */
+    GEPriceService(OkHttpClient httpClient, HttpUrl mappingUrl, PriceSource primarySource, PriceSource fallbackSource,
+                   AllTimeHighStore allTimeHighStore, PriceHistoryStore historyStore, SharedPriceCache sharedCache,
+                   ItemMappingCache itemMappingCache, SellNowMetrics metrics, InterestSet interestSet,
+                   EventBus eventBus) {
         this.httpClient = httpClient;
-        this.priceCache = new ConcurrentHashMap<>();
-        this.itemNameCache = new ConcurrentHashMap<>();
+        this.mappingUrl = mappingUrl;
+        this.primarySource = primarySource;
+        this.fallbackSource = fallbackSource;
+        this.primaryHealth = new SourceHealth(primarySource.getName());
+        this.fallbackHealth = fallbackSource != null ? new SourceHealth(fallbackSource.getName()) : null;
+        this.allTimeHighStore = allTimeHighStore;
+        this.historyStore = historyStore;
+        this.sharedCache = sharedCache;
+        this.itemMappingCache = itemMappingCache;
+        this.metrics = metrics;
+        this.interestSet = interestSet;
+        this.eventBus = eventBus;
+        this.priceTable = new AtomicReference<>(PriceTable.EMPTY);
+        this.latestBatch = new PriceUpdateBatch(8192);
+        this.fallbackBatch = new PriceUpdateBatch(256);
+        this.statistics = new PriceStatistics();
+        this.changedEntries = new int[8192];
+        this.latestDelta = new PriceDeltaEvent.Builder();
+        this.tradeDelta = new PriceDeltaEvent.Builder();
+        this.mergeDelta = new PriceDeltaEvent.Builder();
+    }
+    
+    /**
+     * Load the all-time highs and last prices persisted by previous sessions
+     * Only replaces the table if no prices have been fetched yet
+     */
+    public void loadPersistedHighs() {
+        priceTable.compareAndSet(PriceTable.EMPTY, allTimeHighStore.load());
     }
     
     /**
-     * Start periodic price updates
-     * @param executor The executor service for scheduling updates
+     * Start periodic price updates on a dedicated thread, returning immediately
+     * The first poll runs straight away and the item names are loaded after it, later polls are timed by
+     * {@link PollScheduler}
      * @param updateIntervalMinutes The interval between updates in minutes (minimum 5)
      */
-    public void startPriceUpdates(ScheduledExecutorService executor, int updateIntervalMinutes) {
-        // Ensure minimum interval of 5 minutes to respect API rate limits
-        long intervalMinutes = Math.max(updateIntervalMinutes, DEFAULT_UPDATE_INTERVAL_MINUTES);
+    public synchronized void startPriceUpdates(int updateIntervalMinutes) {
+        if (executor != null) {
+            return;
+        }
         
-        // Initial update
-        updateAllPrices();
+        scheduler.setIntervalMinutes(updateIntervalMinutes);
+        consecutiveFailures = 0;
         
-        // Schedule periodic updates and store the task
-        priceUpdateTask = executor.scheduleAtFixedRate(
-            this::updateAllPrices,
-            intervalMinutes,
-            intervalMinutes,
-            TimeUnit.MINUTES
-        );
+        int startedGeneration = generation.incrementAndGet();
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sell-now-prices");
+            thread.setDaemon(true);
+            return thread;
+        });
+        fetchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sell-now-fetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Sources and batches are only used by one thread at a time, so wait for stopped updates to let go first
+        List<ExecutorService> retired = new ArrayList<>(retiredExecutors);
+        retiredExecutors.clear();
+        executor.execute(() -> awaitRetired(retired));
+        nextPoll = executor.schedule(() -> poll(startedGeneration), 0, TimeUnit.MILLISECONDS);
+        regularPollPending = false;
+        refreshNotBefore = 0;
+        executor.execute(this::loadItemNameMapping);
+    }
+    
+    /**
+     * Change the update interval while updates run, moving the next regular poll to match
+     * @param updateIntervalMinutes The interval between updates in minutes (minimum 5)
+     */
+    public synchronized void setUpdateInterval(int updateIntervalMinutes) {
+        if (executor == null) {
+            return;
+        }
+        int currentGeneration = generation.get();
+        executor.execute(() -> reschedule(currentGeneration, updateIntervalMinutes));
+    }
+    
+    /**
+     * Apply a new interval on the price update thread, which is idle, so the pending poll is only queued
+     */
+    private synchronized void reschedule(int pollGeneration, int updateIntervalMinutes) {
+        scheduler.setIntervalMinutes(updateIntervalMinutes);
+        if (executor == null || generation.get() != pollGeneration || !regularPollPending
+            || nextPoll == null || !nextPoll.cancel(false)) {
+            return;
+        }
+        long delayMillis = scheduler.nextDelay(System.currentTimeMillis());
+        nextPoll = executor.schedule(() -> poll(pollGeneration), delayMillis, TimeUnit.MILLISECONDS);
+        log.debug("Update interval changed to {} minutes, next poll in {}s", updateIntervalMinutes,
+            TimeUnit.MILLISECONDS.toSeconds(delayMillis));
+    }
+    
+    /**
+     * Poll now instead of waiting for the next scheduled poll, callable from any thread
+     * Callers while a poll runs or is queued share that poll and its outcome rather than starting another.
+     * Within a minute of the last poll starting, or before its retry when it failed, nothing is requested
+     * and the last outcome is returned
+     * @return The poll's outcome, FAILED if updates are not running or stop before it finishes
+     */
+    public synchronized CompletableFuture<SellNowMetrics.PollOutcome> refreshPrices() {
+        if (executor == null) {
+            return CompletableFuture.completedFuture(SellNowMetrics.PollOutcome.FAILED);
+        }
+        if (runningPoll != null) {
+            return runningPoll;
+        }
+        if (queuedRefresh != null) {
+            return queuedRefresh;
+        }
+        if (System.currentTimeMillis() < refreshNotBefore) {
+            return CompletableFuture.completedFuture(lastOutcome);
+        }
+        
+        queuedRefresh = new CompletableFuture<>();
+        // If the scheduled poll cannot be cancelled it has just started, and takes the queued refresh as its own
+        if (nextPoll.cancel(false)) {
+            int currentGeneration = generation.get();
+            nextPoll = executor.schedule(() -> poll(currentGeneration), 0, TimeUnit.MILLISECONDS);
+            regularPollPending = false;
+        }
+        log.debug("Manual price refresh requested");
+        return queuedRefresh;
     }
     
     /**
-     * Stop periodic price updates
+     * Stop periodic price updates, cancelling any request in flight
      */
     public void stopPriceUpdates() {
-        if (priceUpdateTask != null && !priceUpdateTask.isCancelled()) {
-            priceUpdateTask.cancel(false);
-            log.debug("Price update task cancelled");
+        CompletableFuture<SellNowMetrics.PollOutcome> running;
+        CompletableFuture<SellNowMetrics.PollOutcome> queued;
+        List<PriceUpdateBatch> merges;
+        synchronized (this) {
+            if (executor == null) {
+                return;
+            }
+            generation.incrementAndGet();
+            executor.shutdownNow();
+            fetchExecutor.shutdownNow();
+            retiredExecutors.add(executor);
+            retiredExecutors.add(fetchExecutor);
+            executor = null;
+            fetchExecutor = null;
+            pendingTrades.clear();
+            merges = new ArrayList<>(pendingMerges);
+            pendingMerges.clear();
+            running = runningPoll;
+            queued = queuedRefresh;
+            runningPoll = null;
+            queuedRefresh = null;
+        }
+        
+        primarySource.cancel();
+        // Historical highs are not fetched again once handed over, so the ones still queued are kept
+        if (!merges.isEmpty()) {
+            applyHistoricalHighs(merges, new PriceDeltaEvent.Builder());
+        }
+        if (running != null) {
+            running.complete(SellNowMetrics.PollOutcome.FAILED);
+        }
+        if (queued != null) {
+            queued.complete(SellNowMetrics.PollOutcome.FAILED);
         }
+        log.debug("Price updates stopped");
     }
     
     /**
-     * Update all prices from OSRS Wiki API
+     * Wait on the new price update thread, before its first poll, for stopped updates' threads to finish
      */
-    private void updateAllPrices() {
+    private static void awaitRetired(List<ExecutorService> retired) {
         try {
-            log.debug("Updating GE prices from OSRS Wiki...");
-            
-            // Fetch latest prices
-            Request request = new Request.Builder()
-                .url(OSRS_WIKI_API)
-                .header("User-Agent", "RuneLite Sell-Now Plugin")
-                .build();
-            
-            try (Response response = httpClient.newCall(request).execute()) {
-                if (response.isSuccessful() && response.body() != null) {
-                    String responseBody = response.body().string();
-                    JsonObject json = JsonParser.parseString(responseBody).getAsJsonObject();
-                    JsonObject data = json.getAsJsonObject("data");
-                    
-                    if (data != null) {
-                        data.entrySet().forEach(entry -> {
-                            try {
-                                int itemId = Integer.parseInt(entry.getKey());
-                                JsonObject priceData = entry.getValue().getAsJsonObject();
-                                
-                                // Use high price if available, otherwise use low price
-                                long price = 0;
-                                if (priceData.has("high")) {
-                                    price = priceData.get("high").getAsLong();
-                                } else if (priceData.has("low")) {
-                                    price = priceData.get("low").getAsLong();
-                                }
-                                
-                                if (price > 0) {
-                                    ItemPriceData itemData = priceCache.computeIfAbsent(
-                                        itemId,
-                                        id -> new ItemPriceData(id, itemNameCache.getOrDefault(id, "Unknown Item"))
-                                    );
-                                    itemData.updatePrice(price);
-                                }
-                            } catch (Exception e) {
-                                log.debug("Error parsing price for item: " + entry.getKey(), e);
-                            }
-                        });
-                        
-                        log.debug("Updated {} items from OSRS Wiki", data.size());
+            for (ExecutorService previous : retired) {
+                if (!previous.awaitTermination(RETIRED_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    log.warn("Price updates restarted while a previous fetch is still running");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Run one poll and schedule the next, backing off after failures and retrying sooner when nothing changed
+     * A primary fetch is only started here, its result is applied by a later task on the price update thread, so
+     * own trades and backfill merges queued meanwhile never wait behind a slow fetch
+     */
+    private void poll(int pollGeneration) {
+        CompletableFuture<SellNowMetrics.PollOutcome> flight;
+        synchronized (this) {
+            if (generation.get() != pollGeneration) {
+                return;
+            }
+            flight = queuedRefresh != null ? queuedRefresh : new CompletableFuture<>();
+            queuedRefresh = null;
+            runningPoll = flight;
+        }
+        refreshHistoryRanges();
+        
+        PollRun run = new PollRun(pollGeneration, flight, System.currentTimeMillis());
+        if (sharedCache.isEnabled() && !sharedCache.tryLead()) {
+            // Another client polls the API, just pick up what it shares
+            SellNowMetrics.PollOutcome outcome = followSharedCache(pollGeneration);
+            consecutiveFailures = 0;
+            scheduler.skipped(run.pollTime);
+            finishPoll(run, outcome, FOLLOW_INTERVAL_MILLIS, false);
+        } else {
+            updateAllPrices(run);
+        }
+    }
+    
+    /**
+     * Schedule the next poll after a poll of the primary source ended
+     */
+    private void primaryPollFinished(PollRun run, SellNowMetrics.PollOutcome outcome) {
+        long delayMillis;
+        boolean regular = false;
+        if (outcome == SellNowMetrics.PollOutcome.FAILED) {
+            consecutiveFailures++;
+            scheduler.skipped(run.pollTime);
+            delayMillis = Math.max(backoffMillis(consecutiveFailures), retryAfterMillis);
+            log.debug("Price poll failed {} time(s) in a row, retrying in {}s", consecutiveFailures,
+                TimeUnit.MILLISECONDS.toSeconds(delayMillis));
+        } else if (outcome == SellNowMetrics.PollOutcome.UPDATED) {
+            consecutiveFailures = 0;
+            scheduler.updated(run.pollTime, latestBatch.getNewestTradeTime());
+            delayMillis = scheduler.nextDelay(System.currentTimeMillis());
+            regular = true;
+            log.debug("Next price poll in {}s, publish cadence {}s", TimeUnit.MILLISECONDS.toSeconds(delayMillis),
+                TimeUnit.MILLISECONDS.toSeconds(scheduler.getCadenceMillis()));
+        } else {
+            consecutiveFailures = 0;
+            delayMillis = scheduler.unchanged(run.pollTime);
+            log.debug("Prices not published yet, retrying in {}s", TimeUnit.MILLISECONDS.toSeconds(delayMillis));
+        }
+        finishPoll(run, outcome, delayMillis, regular);
+    }
+    
+    private void finishPoll(PollRun run, SellNowMetrics.PollOutcome outcome, long delayMillis, boolean regular) {
+        retryAfterMillis = 0;
+        synchronized (this) {
+            if (executor != null && generation.get() == run.pollGeneration) {
+                nextPoll = executor.schedule(() -> poll(run.pollGeneration), delayMillis, TimeUnit.MILLISECONDS);
+                regularPollPending = regular;
+                runningPoll = null;
+                lastOutcome = outcome;
+                refreshNotBefore = outcome == SellNowMetrics.PollOutcome.FAILED
+                    ? System.currentTimeMillis() + delayMillis
+                    : run.pollTime + MIN_REFRESH_INTERVAL_MILLIS;
+            }
+        }
+        run.flight.complete(outcome);
+    }
+    
+    /**
+     * Queue a task on the price update thread, unless updates were stopped or restarted since a poll began
+     * @return The scheduled task, or null if it was dropped
+     */
+    private synchronized ScheduledFuture<?> onPriceThread(int pollGeneration, Runnable task, long delayMillis) {
+        if (executor == null || generation.get() != pollGeneration) {
+            return null;
+        }
+        return executor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Apply a new version of the shared cache, if the leading client wrote one
+     * Only versions that changed something count as polls, so following does not flood the poll metrics
+     * @return UPDATED if a new version was applied, otherwise UNCHANGED
+     */
+    private SellNowMetrics.PollOutcome followSharedCache(int pollGeneration) {
+        if (!sharedCache.read(priceTable.get(), latestBatch) || latestBatch.size() == 0
+            || generation.get() != pollGeneration) {
+            return SellNowMetrics.PollOutcome.UNCHANGED;
+        }
+        
+        metrics.pollStarted();
+        int changed = applyLatestPrices(latestBatch, System.currentTimeMillis());
+        metrics.recordApplied(changed);
+        metrics.pollFinished(SellNowMetrics.PollOutcome.UPDATED, SHARED_SOURCE_NAME);
+        log.debug("Updated {} items from the shared price cache", changed);
+        return SellNowMetrics.PollOutcome.UPDATED;
+    }
+    
+    /**
+     * Exponential backoff with equal jitter, capped at the normal update interval
+     */
+    private long backoffMillis(int failures) {
+        long ceiling = Math.min(scheduler.getIntervalMillis(), MIN_BACKOFF_MILLIS << Math.min(failures - 1, 16));
+        long half = ceiling / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+    
+    /**
+     * Start fetching from the primary source, hedging with the fallback source if the primary is slow or fails
+     * The poll ends as FAILED whenever the primary failed, even if the fallback answered
+     */
+    private void updateAllPrices(PollRun run) {
+        log.debug("Updating GE prices from {}...", primarySource.getName());
+        metrics.pollStarted();
+        
+        PriceTable current = priceTable.get();
+        ExecutorService fetcher = fetchExecutor;
+        CompletableFuture<PriceSource.Result> primaryFetch;
+        try {
+            if (fetcher == null) {
+                throw new RejectedExecutionException();
+            }
+            primaryFetch = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return fetch(primarySource, primaryHealth, current, latestBatch);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, fetcher);
+        } catch (RejectedExecutionException e) {
+            // Updates were stopped between scheduling this poll and running it
+            primaryPollFinished(run, SellNowMetrics.PollOutcome.FAILED);
+            return;
+        }
+        
+        if (fallbackSource != null) {
+            run.hedge = onPriceThread(run.pollGeneration, () -> hedge(run), hedgeDelayMillis());
+        }
+        primaryFetch.whenComplete((result, error) ->
+            onPriceThread(run.pollGeneration, () -> primaryFetched(run, result, error), 0));
+    }
+    
+    /**
+     * Keep held items fresh from the fallback while still waiting for the primary
+     */
+    private void hedge(PollRun run) {
+        if (run.primaryDone) {
+            return;
+        }
+        log.debug("{} has not answered, hedging with {}", primarySource.getName(), fallbackSource.getName());
+        run.hedged = true;
+        if (updateFromFallback(run.pollGeneration)) {
+            run.appliedSource = fallbackSource.getName();
+        }
+    }
+    
+    /**
+     * Apply the primary source's answer on the price update thread and end the poll
+     */
+    private void primaryFetched(PollRun run, PriceSource.Result result, Throwable error) {
+        run.primaryDone = true;
+        if (run.hedge != null) {
+            run.hedge.cancel(false);
+        }
+        
+        SellNowMetrics.PollOutcome outcome = SellNowMetrics.PollOutcome.FAILED;
+        try {
+            if (error == null) {
+                outcome = apply(primarySource, result, latestBatch, run.pollGeneration);
+                if (outcome != SellNowMetrics.PollOutcome.FAILED) {
+                    run.appliedSource = primarySource.getName();
+                }
+            } else {
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                if (cause instanceof PriceSourceException) {
+                    PriceSourceException failure = (PriceSourceException) cause;
+                    log.warn("Price request to {} failed with HTTP {}", primarySource.getName(),
+                        failure.getStatus());
+                    retryAfterMillis = failure.getRetryAfterMillis();
+                } else if (cause instanceof IOException) {
+                    if (generation.get() != run.pollGeneration) {
+                        log.debug("Price request cancelled");
+                    } else {
+                        log.error("Error fetching prices from {}", primarySource.getName(), cause);
                     }
+                } else {
+                    log.error("Malformed price data from {}", primarySource.getName(), cause);
+                }
+                
+                if (!run.hedged && updateFromFallback(run.pollGeneration)) {
+                    run.appliedSource = fallbackSource.getName();
                 }
             }
-        } catch (IOException e) {
-            log.error("Error fetching prices from OSRS Wiki", e);
+        } finally {
+            metrics.pollFinished(outcome, run.appliedSource);
+        }
+        primaryPollFinished(run, outcome);
+    }
+    
+    /**
+     * How long to wait for the primary source before hedging
+     * Immediately once the primary is considered down, otherwise about twice its usual latency
+     */
+    private long hedgeDelayMillis() {
+        if (fallbackSource == null) {
+            return Long.MAX_VALUE;
+        }
+        if (!primaryHealth.isHealthy()) {
+            return 0;
+        }
+        long averageMillis = TimeUnit.NANOSECONDS.toMillis(primaryHealth.getAverageLatencyNanos());
+        if (averageMillis == 0) {
+            return DEFAULT_HEDGE_DELAY_MILLIS;
+        }
+        return Math.max(MIN_HEDGE_DELAY_MILLIS, Math.min(averageMillis * 2, MAX_HEDGE_DELAY_MILLIS));
+    }
+    
+    /**
+     * Fetch from a source, recording its health
+     */
+    private static PriceSource.Result fetch(PriceSource source, SourceHealth health, PriceTable current,
+                                            PriceUpdateBatch batch) throws IOException {
+        long start = System.nanoTime();
+        try {
+            PriceSource.Result result = source.fetch(current, batch);
+            health.recordSuccess(System.nanoTime() - start);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            health.recordFailure();
+            throw e;
+        }
+    }
+    
+    /**
+     * Fetch from the fallback source on the price update thread and apply the result
+     * @return true if the fallback's prices were applied
+     */
+    private boolean updateFromFallback(int pollGeneration) {
+        if (fallbackSource == null) {
+            return false;
+        }
+        try {
+            PriceSource.Result result = fetch(fallbackSource, fallbackHealth, priceTable.get(), fallbackBatch);
+            return apply(fallbackSource, result, fallbackBatch, pollGeneration) != SellNowMetrics.PollOutcome.FAILED;
+        } catch (IOException | RuntimeException e) {
+            log.debug("Fallback price source {} failed", fallbackSource.getName(), e);
+            return false;
+        }
+    }
+    
+    /**
+     * Apply a fetched batch unless updates were stopped or restarted since the poll began
+     */
+    private SellNowMetrics.PollOutcome apply(PriceSource source, PriceSource.Result result, PriceUpdateBatch batch,
+                                             int pollGeneration) {
+        if (generation.get() != pollGeneration) {
+            log.debug("Discarding prices fetched before updates were stopped");
+            return SellNowMetrics.PollOutcome.FAILED;
+        }
+        
+        switch (result) {
+            case NOT_MODIFIED:
+                log.debug("Prices from {} not modified since last poll", source.getName());
+                source.acknowledge();
+                return SellNowMetrics.PollOutcome.NOT_MODIFIED;
+            case UNCHANGED:
+                log.debug("Prices from {} unchanged since last poll", source.getName());
+                source.acknowledge();
+                return SellNowMetrics.PollOutcome.UNCHANGED;
+            default:
+                int changed = batch.isEstimates()
+                    ? applyEstimates(batch, System.currentTimeMillis())
+                    : applyLatestPrices(batch, System.currentTimeMillis());
+                source.acknowledge();
+                metrics.recordApplied(changed);
+                log.debug("Updated {} of {} items from {}", changed, batch.size(), source.getName());
+                return SellNowMetrics.PollOutcome.UPDATED;
         }
     }
     
     /**
-     * Fetch item names mapping from OSRS Wiki
+     * Fetch from a source and apply the result on the calling thread, without hedging
+     * Used by benchmarks to drive the ingestion path directly
+     * @return The number of items that changed, or -1 if the source had nothing new
+     */
+    int updateFrom(PriceSource source, long timestamp) throws IOException {
+        PriceSource.Result result = source.fetch(priceTable.get(), latestBatch);
+        if (result != PriceSource.Result.UPDATED) {
+            source.acknowledge();
+            return -1;
+        }
+        int changed = applyLatestPrices(latestBatch, timestamp);
+        source.acknowledge();
+        return changed;
+    }
+    
+    /**
+     * Apply a parsed /latest feed to the price table and persist the touched rows
+     * Only items whose highTime or lowTime moved since the last poll are touched
+     * @return The number of items that changed
+     */
+    private int applyLatestPrices(PriceUpdateBatch batch, long timestamp) {
+        if (changedEntries.length < batch.size()) {
+            changedEntries = new int[batch.size()];
+        }
+        
+        int[] changedCount = new int[1];
+        PriceTable table = priceTable.get();
+        for (int i = 0; i < batch.size(); i++) {
+            if (table.tradeTimesChanged(batch.getItemId(i), batch.getHighTime(i), batch.getLowTime(i))) {
+                changedCount[0]++;
+            }
+        }
+        if (changedCount[0] == 0) {
+            return 0;
+        }
+        
+        table = publish(next -> {
+            changedCount[0] = 0;
+            latestDelta.clear();
+            for (int i = 0; i < batch.size(); i++) {
+                int itemId = batch.getItemId(i);
+                if (!next.tradeTimesChanged(itemId, batch.getHighTime(i), batch.getLowTime(i))) {
+                    continue;
+                }
+                
+                long oldPrice = next.getCurrentPrice(itemId);
+                long oldAllTimeHigh = next.getAllTimeHigh(itemId);
+                boolean wasAtAllTimeHigh = next.isAtAllTimeHigh(itemId);
+                next.setTradeTimes(itemId, batch.getHighTime(i), batch.getLowTime(i));
+                // Use high price if available, otherwise use low price
+                long price = batch.getHigh(i) > 0 ? batch.getHigh(i) : batch.getLow(i);
+                // The player's own trade stands until the wiki has seen a later one
+                boolean ownTradeNewer = next.getTradedTime(itemId)
+                    > Math.max(batch.getHighTime(i), batch.getLowTime(i));
+                if (price > 0 && !ownTradeNewer) {
+                    next.updatePrice(itemId, price, timestamp);
+                }
+                latestDelta.record(itemId, oldPrice, oldAllTimeHigh, wasAtAllTimeHigh, next);
+                changedEntries[changedCount[0]++] = i;
+            }
+        });
+        
+        // Statistics are only kept for held items, drop those of items the player no longer has
+        int interestVersion = interestSet.getVersion();
+        if (interestVersion != statisticsInterestVersion) {
+            statistics.retain(interestSet.getItems());
+            statisticsInterestVersion = interestVersion;
+        }
+        
+        boolean sharing = sharedCache.isLeader();
+        if (sharing) {
+            sharedCache.beginWrite();
+        }
+        historyStore.begin(timestamp);
+        for (int i = 0; i < changedCount[0]; i++) {
+            int entry = changedEntries[i];
+            int itemId = batch.getItemId(entry);
+            persist(table, itemId);
+            if (interestSet.contains(itemId)) {
+                statistics.record(itemId, table.getCurrentPrice(itemId), timestamp);
+                historyStore.append(itemId, table.getCurrentPrice(itemId));
+            }
+            // The table's price may be this player's own trade or an estimate, followers only get the feed's
+            long feedPrice = batch.getHigh(entry) > 0 ? batch.getHigh(entry) : batch.getLow(entry);
+            if (sharing && feedPrice > 0) {
+                sharedCache.write(itemId, feedPrice, batch.getHighTime(entry), batch.getLowTime(entry));
+            }
+        }
+        historyStore.commit();
+        if (sharing) {
+            sharedCache.endWrite();
+        }
+        postDelta(latestDelta, table);
+        return changedCount[0];
+    }
+    
+    /**
+     * Apply estimated prices, such as the fallback source's guide prices, to current prices only
+     * Estimates are not trades, so all-time highs, trade times, statistics, history, the persisted highs and the
+     * shared cache are left alone, and the next poll of the primary source replaces them
+     * @return The number of items that changed
+     */
+    private int applyEstimates(PriceUpdateBatch batch, long timestamp) {
+        int[] changedCount = new int[1];
+        PriceTable table = publish(next -> {
+            changedCount[0] = 0;
+            latestDelta.clear();
+            for (int i = 0; i < batch.size(); i++) {
+                int itemId = batch.getItemId(i);
+                long price = batch.getHigh(i) > 0 ? batch.getHigh(i) : batch.getLow(i);
+                long oldPrice = next.getCurrentPrice(itemId);
+                // The player's own trade is real, it stands until the wiki has seen a later one
+                boolean ownTradeNewer = next.getTradedTime(itemId)
+                    > Math.max(next.getHighTime(itemId), next.getLowTime(itemId));
+                if (price <= 0 || price == oldPrice || ownTradeNewer) {
+                    continue;
+                }
+                
+                long oldAllTimeHigh = next.getAllTimeHigh(itemId);
+                boolean wasAtAllTimeHigh = next.isAtAllTimeHigh(itemId);
+                next.setEstimatedPrice(itemId, price, timestamp);
+                latestDelta.record(itemId, oldPrice, oldAllTimeHigh, wasAtAllTimeHigh, next);
+                changedCount[0]++;
+            }
+        });
+        postDelta(latestDelta, table);
+        return changedCount[0];
+    }
+    
+    /**
+     * Raise all-time highs from historical data
+     * Each entry's high and highTime (epoch seconds) is treated as a past high, current prices are left alone.
+     * The highs are copied, so the caller may reuse the batch, and queued for the price update thread, which
+     * applies every queued batch in one update. If updates are not running they are applied on the calling thread
+     */
+    void mergeHistoricalHighs(PriceUpdateBatch batch) {
+        PriceUpdateBatch highs = new PriceUpdateBatch(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            highs.accept(batch.getItemId(i), batch.getHigh(i), batch.getHighTime(i), 0, 0);
+        }
+        
+        synchronized (this) {
+            if (executor != null) {
+                pendingMerges.add(highs);
+                if (pendingMerges.size() == 1) {
+                    executor.execute(this::applyPendingMerges);
+                }
+                return;
+            }
+        }
+        applyHistoricalHighs(Collections.singletonList(highs), new PriceDeltaEvent.Builder());
+    }
+    
+    /**
+     * Apply the queued historical highs on the price update thread
+     */
+    private void applyPendingMerges() {
+        List<PriceUpdateBatch> merges;
+        synchronized (this) {
+            merges = new ArrayList<>(pendingMerges);
+            pendingMerges.clear();
+        }
+        applyHistoricalHighs(merges, mergeDelta);
+    }
+    
+    private void applyHistoricalHighs(List<PriceUpdateBatch> merges, PriceDeltaEvent.Builder delta) {
+        PriceTable table = publish(next -> {
+            delta.clear();
+            for (PriceUpdateBatch batch : merges) {
+                for (int i = 0; i < batch.size(); i++) {
+                    int itemId = batch.getItemId(i);
+                    long price = next.getCurrentPrice(itemId);
+                    long oldAllTimeHigh = next.getAllTimeHigh(itemId);
+                    boolean wasAtAllTimeHigh = next.isAtAllTimeHigh(itemId);
+                    next.raiseAllTimeHigh(itemId, batch.getHigh(i),
+                        TimeUnit.SECONDS.toMillis(batch.getHighTime(i)));
+                    delta.record(itemId, price, oldAllTimeHigh, wasAtAllTimeHigh, next);
+                }
+            }
+        });
+        // Only the price update thread publishes while updates run, so this is still the newest table
+        for (PriceUpdateBatch batch : merges) {
+            for (int i = 0; i < batch.size(); i++) {
+                persist(table, batch.getItemId(i));
+            }
+        }
+        postDelta(delta, table);
+    }
+    
+    /**
+     * Apply a price the player just traded at on the Grand Exchange, without waiting for the next poll
+     * Only queues the trade, so the caller, usually the client thread, never copies the table or writes the
+     * persisted highs. The price update thread applies every queued trade in one update straight away, as it
+     * never waits on a fetch, and drops them if updates are not running
+     * @param time When the trade happened, in epoch seconds
+     */
+    public synchronized void applyOwnTrade(int itemId, long price, long time) {
+        if (executor == null) {
+            return;
+        }
+        pendingTrades.add(new OwnTrade(itemId, price, time));
+        if (pendingTrades.size() == 1) {
+            executor.execute(this::applyOwnTrades);
+        }
+    }
+    
+    /**
+     * Apply the queued own trades on the price update thread
+     * A trade is rejected if the wiki has already seen a later trade of the item, or if the price is more than
+     * three times off the known prices, so one odd trade cannot set a lasting all-time high
+     */
+    private void applyOwnTrades() {
+        List<OwnTrade> trades;
+        synchronized (this) {
+            trades = new ArrayList<>(pendingTrades);
+            pendingTrades.clear();
+        }
+        
+        boolean[] accepted = new boolean[trades.size()];
+        PriceTable table = publish(next -> {
+            tradeDelta.clear();
+            for (int i = 0; i < trades.size(); i++) {
+                OwnTrade trade = trades.get(i);
+                accepted[i] = isPlausibleTrade(next, trade);
+                if (!accepted[i]) {
+                    continue;
+                }
+                long oldPrice = next.getCurrentPrice(trade.itemId);
+                long oldAllTimeHigh = next.getAllTimeHigh(trade.itemId);
+                boolean wasAtAllTimeHigh = next.isAtAllTimeHigh(trade.itemId);
+                next.recordOwnTrade(trade.itemId, trade.price, trade.time);
+                tradeDelta.record(trade.itemId, oldPrice, oldAllTimeHigh, wasAtAllTimeHigh, next);
+            }
+        });
+        for (int i = 0; i < trades.size(); i++) {
+            OwnTrade trade = trades.get(i);
+            if (accepted[i]) {
+                persist(table, trade.itemId);
+                log.debug("Applied own trade of item {} at {}", trade.itemId, trade.price);
+            } else {
+                log.debug("Ignoring own trade of item {} at {}", trade.itemId, trade.price);
+            }
+        }
+        postDelta(tradeDelta, table);
+    }
+    
+    private static boolean isPlausibleTrade(PriceTable table, OwnTrade trade) {
+        int itemId = trade.itemId;
+        if (itemId < 0 || trade.price <= 0
+            || trade.time <= Math.max(table.getHighTime(itemId), table.getLowTime(itemId))) {
+            return false;
+        }
+        long known = Math.max(table.getCurrentPrice(itemId), table.getAllTimeHigh(itemId));
+        return known <= 0 || trade.price <= known * OWN_TRADE_TOLERANCE
+            && trade.price * OWN_TRADE_TOLERANCE >= table.getCurrentPrice(itemId);
+    }
+    
+    /**
+     * Post what an update changed, if anything, as one {@link PriceDeltaEvent}
+     */
+    private void postDelta(PriceDeltaEvent.Builder delta, PriceTable table) {
+        if (!delta.isEmpty()) {
+            eventBus.post(delta.build(table));
+        }
+    }
+    
+    /**
+     * Copy the current table, apply an update to the copy and publish it in a single swap,
+     * so readers never see a half-applied update
+     * If another writer published first, the update is re-applied on top of its table
+     */
+    private PriceTable publish(Consumer<PriceTable> update) {
+        while (true) {
+            PriceTable current = priceTable.get();
+            PriceTable next = current.copy();
+            update.accept(next);
+            if (priceTable.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+    
+    private void persist(PriceTable table, int itemId) {
+        long allTimeHigh = table.getAllTimeHigh(itemId);
+        if (allTimeHigh > 0) {
+            allTimeHighStore.write(itemId, table.getCurrentPrice(itemId), allTimeHigh,
+                table.getAllTimeHighTime(itemId));
+        }
+    }
+    
+    /**
+     * Load item names, from the on-disk cache first and from the OSRS Wiki only if the cache is stale
      */
     public void loadItemNameMapping() {
+        ItemNameIndex.Builder cachedNames = new ItemNameIndex.Builder();
+        int cached = itemMappingCache.load(cachedNames);
+        if (cached > 0) {
+            itemNames = cachedNames.build();
+        }
+        log.debug("Loaded {} item names from cache", cached);
+        
+        // A client following the shared cache leaves refreshing the on-disk names to the leader
+        boolean following = sharedCache.isEnabled() && !sharedCache.isLeader();
+        if (cached > 0 && (!itemMappingCache.isStale() || following)) {
+            return;
+        }
+        
         try {
             log.debug("Loading item name mapping from OSRS Wiki...");
             
             Request request = new Request.Builder()
-                .url(OSRS_WIKI_MAPPING)
+                .url(mappingUrl)
                 .header("User-Agent", "RuneLite Sell-Now Plugin")
                 .build();
             
             try (Response response = httpClient.newCall(request).execute()) {
                 if (response.isSuccessful() && response.body() != null) {
-                    String responseBody = response.body().string();
-                    
-                    try {
-                        // Parse as JSON array and process each item
-                        JsonParser.parseString(responseBody).getAsJsonArray().forEach(element -> {
-                            JsonObject item = element.getAsJsonObject();
-                            int id = item.get("id").getAsInt();
-                            String name = item.get("name").getAsString();
-                            itemNameCache.put(id, name);
-                        });
-                        
-                        log.debug("Loaded {} item names", itemNameCache.size());
-                    } catch (Exception e) {
-                        log.error("Error parsing item mapping JSON", e);
+                    ItemNameIndex.Builder names = new ItemNameIndex.Builder();
+                    try (JsonReader reader = new JsonReader(
+                        new InputStreamReader(response.body().byteStream(), StandardCharsets.UTF_8))) {
+                        readMapping(reader, names);
                     }
+                    
+                    itemNames = names.build();
+                    itemMappingCache.save(itemNames);
+                    log.debug("Loaded {} item names", itemNames.size());
                 }
             }
-        } catch (Exception e) {
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
             log.error("Error loading item name mapping", e);
         }
     }
     
+    /**
+     * Stream the id and name of every entry in a /mapping response, skipping the other fields
+     */
+    private static void readMapping(JsonReader reader, ItemNameIndex.Builder names) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            int id = -1;
+            String name = null;
+            
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String field = reader.nextName();
+                if ("id".equals(field) && reader.peek() == JsonToken.NUMBER) {
+                    id = reader.nextInt();
+                } else if ("name".equals(field) && reader.peek() == JsonToken.STRING) {
+                    name = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            
+            if (id >= 0 && name != null) {
+                names.add(id, name);
+            }
+        }
+        reader.endArray();
+    }
+    
+    /**
+     * Get the name of an item, resolved at call time so names loaded after prices are still picked up
+     * @return The name, or null if the mapping has not been loaded or does not contain the item
+     */
+    public String getItemName(int itemId) {
+        return itemNames.getName(itemId);
+    }
+    
+    /**
+     * Get the number of item names loaded
+     */
+    public int getItemNameCount() {
+        return itemNames.size();
+    }
+    
+    /**
+     * Get the current item name index, for searching items by name
+     * Replaced as a whole when the mapping loads, so callers should read it once per search
+     */
+    public ItemNameIndex getItemNames() {
+        return itemNames;
+    }
+    
+    /**
+     * Rebuild the held items' 30 day and 1 year ranges from the persisted history, if due
+     * Opens, folds and remaps the history on the price update thread rather than the client thread, which only
+     * reads the snapshots, and is also called directly by benchmarks
+     */
+    void refreshHistoryRanges() {
+        historyStore.refreshRanges(interestSet.getItems(), interestSet.getVersion());
+    }
+    
+    /**
+     * Replace the item names without loading the mapping, for benchmarks
+     */
+    void setItemNames(ItemNameIndex names) {
+        itemNames = names;
+    }
+    
+    /**
+     * Get the current price table
+     * The returned table never changes, so callers doing several lookups (such as the overlay,
+     * once per frame) should read it once and use it for all of them
+     */
+    public PriceTable getPriceTable() {
+        return priceTable.get();
+    }
+    
     /**
      * Get price data for an item
+     * This builds a snapshot object, so prefer {@link #getPriceTable()} on hot paths
      */
     public ItemPriceData getItemPriceData(int itemId) {
-        return priceCache.get(itemId);
+        PriceTable table = priceTable.get();
+        if (!table.hasPrice(itemId)) {
+            return null;
+        }
+        return new ItemPriceData(
+            itemId,
+            table.getCurrentPrice(itemId),
+            table.getAllTimeHigh(itemId),
+            table.getLastUpdated(itemId)
+        );
+    }
+    
+    /**
+     * Get the health of the primary price source
+     */
+    public SourceHealth getPrimaryHealth() {
+        return primaryHealth;
+    }
+    
+    /**
+     * Get the health of the fallback price source, or null if there is none
+     */
+    public SourceHealth getFallbackHealth() {
+        return fallbackHealth;
+    }
+    
+    /**
+     * Get an item's price range over the last 24 hours, with its current price placed in it
+     * Only covers prices seen since the plugin started, while the player held the item
+     * @return The range, or null if the item has no price in the window
+     */
+    public PriceRange getDayRange(int itemId) {
+        return statistics.getDayRange(itemId, priceTable.get().getCurrentPrice(itemId), System.currentTimeMillis());
+    }
+    
+    /**
+     * Get an item's price range over the last 7 days, with its current price placed in it
+     * @see #getDayRange(int)
+     */
+    public PriceRange getWeekRange(int itemId) {
+        return statistics.getWeekRange(itemId, priceTable.get().getCurrentPrice(itemId), System.currentTimeMillis());
+    }
+    
+    /**
+     * Get an item's price range over the last 30 days from the persisted history, with its current price placed in it
+     * Unlike {@link #getWeekRange(int)} this covers earlier sessions, but trails the latest polls by up to 15 minutes
+     * @return The range, or null if the item has no history
+     */
+    public PriceRange getMonthRange(int itemId) {
+        return historyStore.getRange(itemId, PriceHistoryStore.MONTH, priceTable.get().getCurrentPrice(itemId));
+    }
+    
+    /**
+     * Get an item's price range over the last year from the persisted history
+     * @see #getMonthRange(int)
+     */
+    public PriceRange getYearRange(int itemId) {
+        return historyStore.getRange(itemId, PriceHistoryStore.YEAR, priceTable.get().getCurrentPrice(itemId));
     }
     
     /**
      * Check if an item is at its all-time high
      */
     public boolean isItemAtAllTimeHigh(int itemId) {
-        ItemPriceData data = priceCache.get(itemId);
-        return data != null && data.isAtAllTimeHigh();
+        return priceTable.get().isAtAllTimeHigh(itemId);
     }
     
     /**
      * Get the number of items being tracked
      */
     public int getTrackedItemCount() {
-        return priceCache.size();
+        return priceTable.get().getItemCount();
     }
     
     /**
      * Clear all cached data
+     * Persisted all-time highs are kept and reloaded by {@link #loadPersistedHighs()}
      */
     public void clearCache() {
-        priceCache.clear();
+        priceTable.set(PriceTable.EMPTY);
+        statistics.clear();
+        allTimeHighStore.close();
+        historyStore.close();
+        sharedCache.close();
+        primarySource.reset();
+        if (fallbackSource != null) {
+            fallbackSource.reset();
+        }
+    }
+    
+    /**
+     * A price seen in one of the player's own offers, waiting to be applied
+     */
+    private static final class OwnTrade {
+        private final int itemId;
+        private final long price;
+        private final long time;
+        
+        OwnTrade(int itemId, long price, long time) {
+            this.itemId = itemId;
+            this.price = price;
+            this.time = time;
+        }
+    }
+    
+    /**
+     * One poll's state while its primary fetch is in flight, only touched on the price update thread
+     */
+    private static final class PollRun {
+        private final int pollGeneration;
+        private final CompletableFuture<SellNowMetrics.PollOutcome> flight;
+        private final long pollTime;
+        private ScheduledFuture<?> hedge;
+        private boolean hedged;
+        private boolean primaryDone;
+        private String appliedSource;
+        
+        PollRun(int pollGeneration, CompletableFuture<SellNowMetrics.PollOutcome> flight, long pollTime) {
+            this.pollGeneration = pollGeneration;
+            this.flight = flight;
+            this.pollTime = pollTime;
+        }
     }
 }
@@ -0,0 +1,128 @@
+package com.sellnow;
+
+import net.runelite.api.InventoryID;
+
+import javax.inject.Singleton;
+import java.util.Arrays;
+
+/**
+ * Precomputed highlight tier for every inventory and bank slot
+ * Container contents are recorded on ItemContainerChanged, and tiers are only recomputed when a container,
+ * the config or the price of a held item changes, so the overlay never does price lookups per frame
+ */
+@Singleton
+class HighlightIndex {
+    
+    /** Tier value for slots that should not be highlighted */
+    static final int NO_HIGHLIGHT = -1;
+    
+    private final Slots inventory = new Slots();
+    private final Slots bank = new Slots();
+    
+    // Set from any thread, the index is rebuilt on the next refresh
+    private volatile boolean dirty = true;
+    private int indexedNearPercent;
+    
+    /**
+     * Record the contents of a container
+     * Must be called on the client thread
+     * @param itemIds The item IDs as shown in the container
+     * @param canonicalItemIds The same items with noted and placeholder IDs resolved, used for price lookups
+     */
+    void setContainer(int containerId, int[] itemIds, int[] canonicalItemIds) {
+        Slots slots = getSlots(containerId);
+        if (slots != null) {
+            slots.set(itemIds, canonicalItemIds);
+            dirty = true;
+        }
+    }
+    
+    /**
+     * Mark the index as needing a rebuild, e.g. after a config change or a price delta touching a held item
+     */
+    void invalidate() {
+        dirty = true;
+    }
+    
+    /**
+     * Recompute tiers if anything changed since the last call, and get the current prices
+     * New price tables alone do not trigger a rebuild, only {@link #invalidate()} calls for deltas that touch
+     * held items do. The flag is cleared before the table is read, so a table published after the read has its
+     * invalidation kept for the next call rather than lost
+     * Must be called on the client thread
+     * @param nearPercent Also highlight items within this percentage of their all-time high
+     * @return The table the tiers were computed from, or the current one if nothing changed
+     */
+    PriceTable refresh(GEPriceService priceService, int nearPercent) {
+        if (!dirty && nearPercent == indexedNearPercent) {
+            return priceService.getPriceTable();
+        }
+        dirty = false;
+        PriceTable prices = priceService.getPriceTable();
+        indexedNearPercent = nearPercent;
+        inventory.computeTiers(prices, nearPercent);
+        bank.computeTiers(prices, nearPercent);
+        return prices;
+    }
+    
+    Slots getInventory() {
+        return inventory;
+    }
+    
+    Slots getBank() {
+        return bank;
+    }
+    
+    private Slots getSlots(int containerId) {
+        if (containerId == InventoryID.INVENTORY.getId()) {
+            return inventory;
+        } else if (containerId == InventoryID.BANK.getId()) {
+            return bank;
+        }
+        return null;
+    }
+    
+    /**
+     * Per-slot contents and highlight tiers of one container
+     */
+    static final class Slots {
+        private int[] itemIds = new int[0];
+        private int[] canonicalItemIds = new int[0];
+        private int[] tiers = new int[0];
+        
+        private void set(int[] itemIds, int[] canonicalItemIds) {
+            if (tiers.length != itemIds.length) {
+                tiers = new int[itemIds.length];
+            }
+            Arrays.fill(tiers, NO_HIGHLIGHT);
+            this.itemIds = itemIds;
+            this.canonicalItemIds = canonicalItemIds;
+        }
+        
+        private void computeTiers(PriceTable prices, int nearPercent) {
+            for (int slot = 0; slot < tiers.length; slot++) {
+                int itemId = canonicalItemIds[slot];
+                tiers[slot] = prices.isNearAllTimeHigh(itemId, nearPercent)
+                    ? prices.getColorTier(itemId) : NO_HIGHLIGHT;
+            }
+        }
+        
+        /**
+         * Get the highlight tier for a slot
+         * @param itemId The item the widget currently shows, guards against widgets updating before the container event
+         */
+        int getTier(int slot, int itemId) {
+            if (slot < 0 || slot >= tiers.length || itemIds[slot] != itemId) {
+                return NO_HIGHLIGHT;
+            }
+            return tiers[slot];
+        }
+        
+        /**
+         * Get the item used for price lookups in a slot
+         */
+        int getCanonicalItemId(int slot) {
+            return slot >= 0 && slot < canonicalItemIds.length ? canonicalItemIds[slot] : -1;
+        }
+    }
+}
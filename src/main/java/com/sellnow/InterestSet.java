@@ -0,0 +1,75 @@
+package com.sellnow;
+
+import javax.inject.Singleton;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Items the player currently holds, by canonical item ID
+ * Kept up to date from container events, and used to limit statistics and backfill to items the overlay can show
+ * Readers get an immutable snapshot, so lookups from the price update thread need no locking
+ */
+@Singleton
+class InterestSet {
+    
+    private final Map<Integer, BitSet> containers = new HashMap<>();
+    
+    // Replaced, never modified, whenever a container's items change
+    private volatile BitSet items = new BitSet();
+    private volatile int version;
+    
+    /**
+     * Replace the items recorded for a container
+     * @param canonicalItemIds The container's items with noted and placeholder IDs resolved
+     */
+    synchronized void setContainer(int containerId, int[] canonicalItemIds) {
+        BitSet containerItems = new BitSet();
+        for (int itemId : canonicalItemIds) {
+            if (itemId > 0) {
+                containerItems.set(itemId);
+            }
+        }
+        
+        BitSet previous = containers.put(containerId, containerItems);
+        if (!containerItems.equals(previous)) {
+            publish();
+        }
+    }
+    
+    /**
+     * Forget all containers
+     */
+    synchronized void clear() {
+        containers.clear();
+        publish();
+    }
+    
+    private void publish() {
+        BitSet union = new BitSet();
+        for (BitSet containerItems : containers.values()) {
+            union.or(containerItems);
+        }
+        items = union;
+        version++;
+    }
+    
+    boolean contains(int itemId) {
+        return itemId >= 0 && items.get(itemId);
+    }
+    
+    /**
+     * Get the current items
+     * The returned set must not be modified
+     */
+    BitSet getItems() {
+        return items;
+    }
+    
+    /**
+     * Get a counter that changes whenever the set does
+     */
+    int getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,84 @@
+package com.sellnow;
+
+import net.runelite.client.callback.ClientThread;
+import net.runelite.client.game.ItemManager;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.BitSet;
+
+/**
+ * Local fallback prices from RuneLite's own GE price cache
+ * Needs no network request, but the prices are averages refreshed less often than the wiki's, so it is
+ * only used to keep held items fresh while the wiki is slow or down. Its batches are marked as estimates,
+ * so they never raise all-time highs or count as trades
+ * {@link ItemManager} may only be used on the client thread, so the held items' guide prices are copied there
+ * and fetches read the latest copy, asking for a new one for the next fetch
+ */
+@Singleton
+class ItemManagerPriceSource implements PriceSource {
+    
+    private final ItemManager itemManager;
+    private final ClientThread clientThread;
+    private final InterestSet interestSet;
+    
+    // Replaced, never modified, by the client thread
+    private volatile GuidePrices guidePrices = new GuidePrices(new int[0], new long[0]);
+    
+    @Inject
+    ItemManagerPriceSource(ItemManager itemManager, ClientThread clientThread, InterestSet interestSet) {
+        this.itemManager = itemManager;
+        this.clientThread = clientThread;
+        this.interestSet = interestSet;
+    }
+    
+    @Override
+    public String getName() {
+        return "RuneLite";
+    }
+    
+    @Override
+    public Result fetch(PriceTable current, PriceUpdateBatch batch) {
+        clientThread.invokeLater(this::refreshGuidePrices);
+        batch.clear();
+        batch.setEstimates(true);
+        GuidePrices prices = guidePrices;
+        for (int i = 0; i < prices.itemIds.length; i++) {
+            int itemId = prices.itemIds[i];
+            long price = prices.prices[i];
+            if (price > 0 && price != current.getCurrentPrice(itemId)) {
+                // Not a trade, so the row keeps the wiki's trade times
+                batch.accept(itemId, price, current.getHighTime(itemId), 0, current.getLowTime(itemId));
+            }
+        }
+        return batch.size() > 0 ? Result.UPDATED : Result.UNCHANGED;
+    }
+    
+    /**
+     * Copy the held items' guide prices for the next fetch
+     * Must be called on the client thread
+     */
+    void refreshGuidePrices() {
+        BitSet held = interestSet.getItems();
+        int[] itemIds = new int[held.cardinality()];
+        long[] prices = new long[itemIds.length];
+        int count = 0;
+        for (int itemId = held.nextSetBit(0); itemId >= 0 && count < itemIds.length;
+             itemId = held.nextSetBit(itemId + 1)) {
+            itemIds[count] = itemId;
+            prices[count] = itemManager.getItemPrice(itemId);
+            count++;
+        }
+        guidePrices = new GuidePrices(itemIds, prices);
+    }
+    
+    private static final class GuidePrices {
+        private final int[] itemIds;
+        private final long[] prices;
+        
+        GuidePrices(int[] itemIds, long[] prices) {
+            this.itemIds = itemIds;
+            this.prices = prices;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.sellnow;
+
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.RuneLite;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * On-disk copy of the OSRS Wiki item mapping, so item names are available at startup without a network call
+ * Stored as a small binary file: a header with the time the mapping was fetched, followed by
+ * (item ID, name) records
+ */
+@Slf4j
+@Singleton
+public class ItemMappingCache {
+    
+    private static final int MAGIC = 0x534E4D50; // "SNMP"
+    private static final int VERSION = 1;
+    private static final long MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis(24);
+    
+    private final File file;
+    
+    @Inject
+    public ItemMappingCache() {
+        this(new File(new File(RuneLite.RUNELITE_DIR, "sell-now"), "item-mapping.dat"));
+    }
+    
+    ItemMappingCache(File file) {
+        this.file = file;
+    }
+    
+    /**
+     * Check if the cached mapping is missing or older than a day
+     * Only reads the file header
+     */
+    public boolean isStale() {
+        if (!file.isFile()) {
+            return true;
+        }
+        
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return true;
+            }
+            long fetchedAt = in.readLong();
+            return System.currentTimeMillis() - fetchedAt > MAX_AGE_MILLIS;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+    
+    /**
+     * Load the cached mapping
+     * @param names Receives item ID and name entries
+     * @return The number of names loaded
+     */
+    public int load(ItemNameIndex.Builder names) {
+        if (!file.isFile()) {
+            return 0;
+        }
+        
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                log.debug("Ignoring item mapping cache with unknown format");
+                return 0;
+            }
+            in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int itemId = in.readInt();
+                names.add(itemId, in.readUTF());
+            }
+            return count;
+        } catch (IOException e) {
+            log.warn("Unable to read item mapping cache", e);
+            return 0;
+        }
+    }
+    
+    /**
+     * Replace the cached mapping
+     */
+    public void save(ItemNameIndex names) {
+        try {
+            File dir = file.getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Unable to create " + dir);
+            }
+            
+            File temp = new File(dir, file.getName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(System.currentTimeMillis());
+                out.writeInt(names.size());
+                for (int i = 0; i < names.size(); i++) {
+                    out.writeInt(names.itemIdAt(i));
+                    out.writeUTF(names.nameAt(i));
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.warn("Unable to write item mapping cache", e);
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.sellnow;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Immutable, compact index of item names, rebuilt whenever the item mapping loads
+ * Names are packed as UTF-8 into one byte array with an offsets array, in item ID order, instead of a String
+ * and map entry per item. Every word start in that array is also listed, sorted by the case-folded text from
+ * there to the end of its name, so a binary search finds the items with a word starting with a prefix.
+ * For the whole GE catalogue this is about 250 KB and a search takes microseconds
+ */
+public final class ItemNameIndex {
+    
+    public static final ItemNameIndex EMPTY = new Builder().build();
+    
+    // Bounds the work per search, so a one letter query does not rank the whole catalogue
+    private static final int MAX_CANDIDATES = 2048;
+    
+    // Ascending, names[offsets[i]..offsets[i + 1]) is the name of itemIds[i]
+    private final int[] itemIds;
+    private final int[] offsets;
+    private final byte[] names;
+    // Word start positions in names sorted by folded suffix, with the entry each belongs to
+    private final int[] wordStarts;
+    private final int[] wordEntries;
+    
+    private ItemNameIndex(int[] itemIds, int[] offsets, byte[] names, int[] wordStarts, int[] wordEntries) {
+        this.itemIds = itemIds;
+        this.offsets = offsets;
+        this.names = names;
+        this.wordStarts = wordStarts;
+        this.wordEntries = wordEntries;
+    }
+    
+    /**
+     * Get the number of named items
+     */
+    public int size() {
+        return itemIds.length;
+    }
+    
+    /**
+     * Get an item's name, decoded on each call
+     * @return The name, or null if the item is not in the index
+     */
+    public String getName(int itemId) {
+        int entry = Arrays.binarySearch(itemIds, itemId);
+        return entry >= 0 ? nameAt(entry) : null;
+    }
+    
+    int itemIdAt(int entry) {
+        return itemIds[entry];
+    }
+    
+    String nameAt(int entry) {
+        return new String(names, offsets[entry], offsets[entry + 1] - offsets[entry], StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Find items with a word in their name starting with the query, ignoring case
+     * Names starting with the query come first, then shorter names
+     * @return Up to limit item IDs, best match first
+     */
+    public int[] search(String query, int limit) {
+        byte[] prefix = fold(query.trim().getBytes(StandardCharsets.UTF_8));
+        if (prefix.length == 0 || limit <= 0) {
+            return new int[0];
+        }
+        
+        int from = lowerBound(prefix, false);
+        int to = Math.min(lowerBound(prefix, true), from + MAX_CANDIDATES);
+        // Rank by whether the match starts the name, then name length, then entry; low bits keep the entry
+        long[] candidates = new long[to - from];
+        for (int i = from; i < to; i++) {
+            int entry = wordEntries[i];
+            long midWord = wordStarts[i] == offsets[entry] ? 0 : 1;
+            long length = offsets[entry + 1] - offsets[entry];
+            candidates[i - from] = midWord << 52 | Math.min(length, 0xFFFF) << 32 | entry;
+        }
+        Arrays.sort(candidates);
+        
+        int[] result = new int[Math.min(limit, candidates.length)];
+        int count = 0;
+        for (int i = 0; i < candidates.length && count < result.length; i++) {
+            int entry = (int) candidates[i];
+            // An item can match at more than one word, keep its best ranked match only
+            boolean seen = false;
+            for (int j = 0; j < count && !seen; j++) {
+                seen = result[j] == itemIds[entry];
+            }
+            if (!seen) {
+                result[count++] = itemIds[entry];
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+    
+    /**
+     * Find the first word whose folded text is not below the prefix, or with after set, the first one past
+     * every word that starts with it
+     */
+    private int lowerBound(byte[] prefix, boolean after) {
+        int low = 0;
+        int high = wordStarts.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = comparePrefix(mid, prefix);
+            if (cmp < 0 || after && cmp == 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * Compare a word's folded text to the prefix, 0 if the word starts with it
+     */
+    private int comparePrefix(int word, byte[] prefix) {
+        int position = wordStarts[word];
+        int end = offsets[wordEntries[word] + 1];
+        for (int i = 0; i < prefix.length; i++) {
+            if (position + i >= end) {
+                return -1;
+            }
+            int cmp = Integer.compare(fold(names[position + i]) & 0xFF, prefix[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+    
+    private static byte fold(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+    
+    private static byte[] fold(byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = fold(bytes[i]);
+        }
+        return bytes;
+    }
+    
+    /**
+     * Collects names before packing them, a later name for the same item replaces the earlier one
+     * Not thread safe
+     */
+    public static final class Builder {
+        private int[] itemIds = new int[256];
+        private int[] starts = new int[256];
+        private int[] lengths = new int[256];
+        private byte[] bytes = new byte[4096];
+        private int count;
+        private int byteCount;
+        
+        public Builder add(int itemId, String name) {
+            byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+            if (count == itemIds.length) {
+                int capacity = count * 2;
+                itemIds = Arrays.copyOf(itemIds, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+            }
+            if (byteCount + encoded.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(byteCount + encoded.length, bytes.length * 2));
+            }
+            System.arraycopy(encoded, 0, bytes, byteCount, encoded.length);
+            itemIds[count] = itemId;
+            starts[count] = byteCount;
+            lengths[count] = encoded.length;
+            count++;
+            byteCount += encoded.length;
+            return this;
+        }
+        
+        public int size() {
+            return count;
+        }
+        
+        public ItemNameIndex build() {
+            // Order by item ID, the later of duplicate names winning
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> itemIds[a] != itemIds[b]
+                ? Integer.compare(itemIds[a], itemIds[b])
+                : Integer.compare(b, a));
+            
+            int[] sortedIds = new int[count];
+            int[] offsets = new int[count + 1];
+            byte[] names = new byte[byteCount];
+            int entries = 0;
+            int position = 0;
+            for (int i = 0; i < count; i++) {
+                int source = order[i];
+                if (entries > 0 && sortedIds[entries - 1] == itemIds[source]) {
+                    continue;
+                }
+                System.arraycopy(bytes, starts[source], names, position, lengths[source]);
+                sortedIds[entries] = itemIds[source];
+                offsets[entries] = position;
+                position += lengths[source];
+                entries++;
+            }
+            offsets[entries] = position;
+            
+            int words = 0;
+            int[] wordStarts = new int[Math.max(16, entries * 4)];
+            int[] wordEntries = new int[wordStarts.length];
+            for (int entry = 0; entry < entries; entry++) {
+                for (int i = offsets[entry]; i < offsets[entry + 1]; i++) {
+                    if (!isWordStart(names, offsets[entry], i)) {
+                        continue;
+                    }
+                    if (words == wordStarts.length) {
+                        wordStarts = Arrays.copyOf(wordStarts, words * 2);
+                        wordEntries = Arrays.copyOf(wordEntries, words * 2);
+                    }
+                    wordStarts[words] = i;
+                    wordEntries[words] = entry;
+                    words++;
+                }
+            }
+            
+            Integer[] wordOrder = new Integer[words];
+            for (int i = 0; i < words; i++) {
+                wordOrder[i] = i;
+            }
+            int[] starts = wordStarts;
+            int[] owners = wordEntries;
+            Arrays.sort(wordOrder, (a, b) -> compareWords(names, starts[a], offsets[owners[a] + 1],
+                starts[b], offsets[owners[b] + 1]));
+            int[] sortedStarts = new int[words];
+            int[] sortedEntries = new int[words];
+            for (int i = 0; i < words; i++) {
+                sortedStarts[i] = starts[wordOrder[i]];
+                sortedEntries[i] = owners[wordOrder[i]];
+            }
+            
+            return new ItemNameIndex(Arrays.copyOf(sortedIds, entries), Arrays.copyOf(offsets, entries + 1),
+                Arrays.copyOf(names, position), sortedStarts, sortedEntries);
+        }
+        
+        /**
+         * A word starts at the start of a name, or after a space, bracket, hyphen or slash
+         */
+        private static boolean isWordStart(byte[] names, int nameStart, int i) {
+            if (names[i] == ' ') {
+                return false;
+            }
+            if (i == nameStart) {
+                return true;
+            }
+            byte previous = names[i - 1];
+            return previous == ' ' || previous == '(' || previous == '-' || previous == '/';
+        }
+        
+        private static int compareWords(byte[] names, int a, int aEnd, int b, int bEnd) {
+            while (a < aEnd && b < bEnd) {
+                int cmp = Integer.compare(fold(names[a++]) & 0xFF, fold(names[b++]) & 0xFF);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return Integer.compare(aEnd - a, bEnd - b);
+        }
+    }
+}
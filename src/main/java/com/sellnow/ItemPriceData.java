@@ -4,9 +4,14 @@ import lombok.Data;
 
 /**
  * Represents price data for an item in the Grand Exchange
+ * This is an immutable snapshot of one row of the {@link PriceTable}
+ * Item names are not stored here, they are looked up with {@link GEPriceService#getItemName(int)} when needed
  */
 @Data
 public class ItemPriceData {
+    /** Number of color tiers returned by {@link #getColorTier(long)} */
+    public static final int TIER_COUNT = 7;
+    
     // Price tier thresholds
     private static final long TIER_1_THRESHOLD = 10_000;       // Gray to White
     private static final long TIER_2_THRESHOLD = 100_000;      // White to Green
@@ -16,17 +21,15 @@ public class ItemPriceData {
     private static final long TIER_6_THRESHOLD = 1_000_000_000; // Orange to Red
     
     private final int itemId;
-    private final String itemName;
-    private long currentPrice;
-    private long allTimeHigh;
-    private long lastUpdated;
+    private final long currentPrice;
+    private final long allTimeHigh;
+    private final long lastUpdated;
     
-    public ItemPriceData(int itemId, String itemName) {
+    public ItemPriceData(int itemId, long currentPrice, long allTimeHigh, long lastUpdated) {
         this.itemId = itemId;
-        this.itemName = itemName;
-        this.currentPrice = 0;
-        this.allTimeHigh = 0;
-        this.lastUpdated = System.currentTimeMillis();
+        this.currentPrice = currentPrice;
+        this.allTimeHigh = allTimeHigh;
+        this.lastUpdated = lastUpdated;
     }
     
     /**
@@ -39,19 +42,15 @@ public class ItemPriceData {
     }
     
     /**
-     * Update the current price and check if it's a new all-time high
+     * Get the color tier based on price ranges
+     * @see #getColorTier(long)
      */
-    public void updatePrice(long newPrice) {
-        this.currentPrice = newPrice;
-        this.lastUpdated = System.currentTimeMillis();
-        
-        if (newPrice > allTimeHigh) {
-            this.allTimeHigh = newPrice;
-        }
+    public int getColorTier() {
+        return getColorTier(currentPrice);
     }
     
     /**
-     * Get the color tier based on price ranges
+     * Get the color tier for a price
      * 0: < 10k (gray)
      * 1: 10k-100k (white)
      * 2: 100k-1m (green)
@@ -60,18 +59,18 @@ public class ItemPriceData {
      * 5: 100m-1b (orange)
      * 6: >= 1b (red)
      */
-    public int getColorTier() {
-        if (currentPrice < TIER_1_THRESHOLD) {
+    public static int getColorTier(long price) {
+        if (price < TIER_1_THRESHOLD) {
             return 0; // gray
-        } else if (currentPrice < TIER_2_THRESHOLD) {
+        } else if (price < TIER_2_THRESHOLD) {
             return 1; // white
-        } else if (currentPrice < TIER_3_THRESHOLD) {
+        } else if (price < TIER_3_THRESHOLD) {
             return 2; // green
-        } else if (currentPrice < TIER_4_THRESHOLD) {
+        } else if (price < TIER_4_THRESHOLD) {
             return 3; // blue
-        } else if (currentPrice < TIER_5_THRESHOLD) {
+        } else if (price < TIER_5_THRESHOLD) {
             return 4; // purple
-        } else if (currentPrice < TIER_6_THRESHOLD) {
+        } else if (price < TIER_6_THRESHOLD) {
             return 5; // orange
         } else {
             return 6; // red
@@ -0,0 +1,78 @@
+package com.sellnow;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power-of-two microsecond buckets
+ * Recording is a handful of atomic adds and never allocates, so it is safe to call every frame
+ */
+final class LatencyHistogram {
+    
+    // Bucket 0 holds samples under 1us, bucket b holds [2^(b-1), 2^b) us, the last bucket everything above
+    private static final int BUCKETS = 32;
+    
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    
+    void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        int bucket = Math.min(64 - Long.numberOfLeadingZeros(nanos / 1000), BUCKETS - 1);
+        buckets.incrementAndGet(bucket);
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+    
+    long getCount() {
+        return count.sum();
+    }
+    
+    long getMeanNanos() {
+        long samples = count.sum();
+        return samples == 0 ? 0 : totalNanos.sum() / samples;
+    }
+    
+    long getMaxNanos() {
+        return maxNanos.get();
+    }
+    
+    /**
+     * Get an upper bound for a percentile, accurate to within a factor of two
+     * @param percentile Between 0 and 1
+     * @return The upper edge of the bucket holding the percentile in nanoseconds, or 0 if nothing was recorded
+     */
+    long getPercentileNanos(double percentile) {
+        long samples = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            samples += buckets.get(i);
+        }
+        if (samples == 0) {
+            return 0;
+        }
+        
+        long target = Math.max(1, (long) Math.ceil(samples * percentile));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            seen += buckets.get(i);
+            if (seen >= target) {
+                return Math.min((1L << i) * 1000, maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+    
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+    }
+}
@@ -0,0 +1,11 @@
+package com.sellnow;
+
+/**
+ * Receives one item at a time from the /latest price feed
+ * Values that are missing or null in the feed are passed as 0
+ */
+@FunctionalInterface
+interface LatestPriceSink {
+    
+    void accept(int itemId, long high, long highTime, long low, long lowTime);
+}
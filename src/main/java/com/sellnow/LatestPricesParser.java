@@ -0,0 +1,114 @@
+package com.sellnow;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+
+/**
+ * Streaming reader for the OSRS Wiki /latest response
+ * Walks the token stream once and hands primitives straight to a {@link LatestPriceSink},
+ * so no response String, JSON tree or per-item objects are built
+ * The /5m, /1h and /24h responses share the same shape, with their average prices reported as high/low
+ */
+@Slf4j
+final class LatestPricesParser {
+    
+    private LatestPricesParser() {
+    }
+    
+    /**
+     * Parse a /latest payload
+     * @param reader Reader positioned at the start of the response
+     * @param sink Receives every item in the "data" object
+     * @return The number of items handed to the sink
+     */
+    static int parse(JsonReader reader, LatestPriceSink sink) throws IOException {
+        return parse(reader, sink, null);
+    }
+    
+    /**
+     * Parse a /latest, /5m, /1h or /24h payload
+     * @param timestamp Receives the top-level "timestamp", the start of the period for averages, if given
+     * @return The number of items handed to the sink
+     */
+    static int parse(JsonReader reader, LatestPriceSink sink, long[] timestamp) throws IOException {
+        int count = 0;
+        
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (timestamp != null && "timestamp".equals(name) && reader.peek() == JsonToken.NUMBER) {
+                timestamp[0] = reader.nextLong();
+                continue;
+            }
+            if (!"data".equals(name) || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                int itemId;
+                try {
+                    itemId = Integer.parseInt(key);
+                } catch (NumberFormatException e) {
+                    log.debug("Skipping non-numeric item key: {}", key);
+                    reader.skipValue();
+                    continue;
+                }
+                
+                if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                    reader.skipValue();
+                    continue;
+                }
+                
+                long high = 0;
+                long highTime = 0;
+                long low = 0;
+                long lowTime = 0;
+                
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "high":
+                        case "avgHighPrice":
+                            high = nextLongOrZero(reader);
+                            break;
+                        case "highTime":
+                            highTime = nextLongOrZero(reader);
+                            break;
+                        case "low":
+                        case "avgLowPrice":
+                            low = nextLongOrZero(reader);
+                            break;
+                        case "lowTime":
+                            lowTime = nextLongOrZero(reader);
+                            break;
+                        default:
+                            reader.skipValue();
+                            break;
+                    }
+                }
+                reader.endObject();
+                
+                sink.accept(itemId, high, highTime, low, lowTime);
+                count++;
+            }
+            reader.endObject();
+        }
+        reader.endObject();
+        
+        return count;
+    }
+    
+    private static long nextLongOrZero(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return 0;
+        }
+        return reader.nextLong();
+    }
+}
@@ -0,0 +1,51 @@
+package com.sellnow;
+
+import java.util.Arrays;
+
+/**
+ * Turns Grand Exchange offer updates into the prices the player actually traded at
+ * Keeps the last seen item, quantity and coins per offer slot, so each update yields the average price of
+ * only the items traded since the previous one. The first update of a slot after login or plugin start only
+ * sets its baseline, since it replays fills that happened at unknown times.
+ * Only used on the client thread
+ */
+class OfferTracker {
+    
+    private static final int SLOTS = 8;
+    
+    private final boolean[] known = new boolean[SLOTS];
+    private final int[] itemIds = new int[SLOTS];
+    private final int[] quantities = new int[SLOTS];
+    private final long[] spent = new long[SLOTS];
+    
+    /**
+     * Forget every slot, for when the player logs out or hops
+     */
+    void reset() {
+        Arrays.fill(known, false);
+    }
+    
+    /**
+     * Record a slot's new state
+     * @param itemId The offer's item, 0 for an empty slot
+     * @param quantity How many items the offer has traded so far
+     * @param coins How many coins the offer has spent or received so far
+     * @return The average price per item of the newly traded items, or 0 if nothing new was traded
+     */
+    long update(int slot, int itemId, int quantity, long coins) {
+        if (slot < 0 || slot >= SLOTS) {
+            return 0;
+        }
+        
+        long price = 0;
+        if (known[slot] && itemIds[slot] == itemId && quantity > quantities[slot] && coins > spent[slot]) {
+            price = (coins - spent[slot]) / (quantity - quantities[slot]);
+        }
+        // A different item or a lower quantity means a new offer, which starts from this state
+        known[slot] = true;
+        itemIds[slot] = itemId;
+        quantities[slot] = quantity;
+        spent[slot] = coins;
+        return itemId > 0 ? price : 0;
+    }
+}
@@ -0,0 +1,24 @@
+package com.sellnow;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event for one overlay frame
+ * Disabled by default since it fires every frame; enable com.sellnow.OverlayFrame in a recording's settings
+ */
+@Name("com.sellnow.OverlayFrame")
+@Label("Overlay Frame")
+@Category({"RuneLite", "Sell Now"})
+@Description("Time spent rendering the Sell Now highlight overlay for one frame")
+@Enabled(false)
+class OverlayFrameEvent extends jdk.jfr.Event {
+    
+    @Label("Render Time")
+    @Timespan
+    long renderTime;
+}
@@ -0,0 +1,165 @@
+package com.sellnow;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when the next price poll runs, aiming just after the wiki is expected to publish new prices
+ * The publish cadence is learned from how far the newest trade time in the feed moves between polls, and the
+ * delay from a trade time to its publication is narrowed down between bounds: a poll that found the next
+ * publication shows it came out at most that long after its newest trade, and one that found nothing new shows
+ * it came out later. Polls aim between the bounds until they meet, then just after the upper one, at the
+ * first expected publication once the update interval has passed. A poll that finds nothing new is retried with growing
+ * delays. Only used on the price update thread
+ */
+final class PollScheduler {
+    
+    /** Shortest update interval, to respect API rate limits */
+    static final int MIN_INTERVAL_MINUTES = 5;
+    
+    private static final long MIN_CADENCE_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long MAX_CADENCE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    // Publication delay assumed before any poll has measured it
+    private static final long DEFAULT_LAG_MILLIS = TimeUnit.SECONDS.toMillis(15);
+    // Bounds closer than this are treated as known
+    private static final long LAG_PRECISION_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    // Added to the aim, so a poll does not race the publication it expects
+    private static final long MARGIN_MILLIS = TimeUnit.SECONDS.toMillis(2);
+    private static final long MIN_RETRY_MILLIS = TimeUnit.SECONDS.toMillis(15);
+    
+    private long intervalMillis = TimeUnit.MINUTES.toMillis(MIN_INTERVAL_MINUTES);
+    // Zero until two polls have seen the feed move
+    private long cadenceMillis;
+    private long newestTradeMillis;
+    // Bounds on how long after its newest trade a publication appears, the upper one -1 until measured
+    private long lagLowMillis;
+    private long lagHighMillis = -1;
+    private int unchangedPolls;
+    private long lastPollTime;
+    
+    /**
+     * @param minutes The configured interval, raised to the minimum of 5
+     */
+    void setIntervalMinutes(int minutes) {
+        intervalMillis = TimeUnit.MINUTES.toMillis(Math.max(minutes, MIN_INTERVAL_MINUTES));
+    }
+    
+    long getIntervalMillis() {
+        return intervalMillis;
+    }
+    
+    long getCadenceMillis() {
+        return cadenceMillis;
+    }
+    
+    /**
+     * Record a poll that brought new prices
+     * @param newestTradeTime The newest high or low trade time in the feed, in epoch seconds
+     */
+    void updated(long now, long newestTradeTime) {
+        lastPollTime = now;
+        unchangedPolls = 0;
+        long tradeMillis = TimeUnit.SECONDS.toMillis(newestTradeTime);
+        if (tradeMillis <= newestTradeMillis) {
+            return;
+        }
+        if (newestTradeMillis > 0) {
+            learnCadence(tradeMillis - newestTradeMillis);
+        }
+        newestTradeMillis = tradeMillis;
+        
+        long lag = now - tradeMillis;
+        lagHighMillis = lagHighMillis < 0 ? lag : Math.min(lagHighMillis, lag);
+        if (lagLowMillis > lagHighMillis) {
+            lagLowMillis = 0;
+        }
+        raiseLagLow(now);
+    }
+    
+    /**
+     * Record a poll that found the feed not modified or unchanged
+     * @return How long to wait before retrying: until the upper lag bound if known, then doubling with each
+     * unchanged poll up to the update interval
+     */
+    long unchanged(long now) {
+        lastPollTime = now;
+        unchangedPolls++;
+        raiseLagLow(now);
+        
+        long retry = MIN_RETRY_MILLIS << Math.min(unchangedPolls - 1, 16);
+        if (unchangedPolls == 1 && cadenceMillis > 0 && lagHighMillis >= 0) {
+            retry = Math.max(retry, newestTradeMillis + cadenceMillis + lagHighMillis + MARGIN_MILLIS - now);
+        }
+        return Math.min(intervalMillis, retry);
+    }
+    
+    /**
+     * If the publication after the newest one seen should have had its trades by now, it was not out yet,
+     * so publications come out later after their trades than that
+     */
+    private void raiseLagLow(long now) {
+        long sinceNext = now - newestTradeMillis - cadenceMillis;
+        if (cadenceMillis == 0 || newestTradeMillis == 0 || sinceNext < 0 || sinceNext >= cadenceMillis) {
+            return;
+        }
+        lagLowMillis = Math.max(lagLowMillis, sinceNext);
+        if (lagHighMillis >= 0 && lagLowMillis >= lagHighMillis) {
+            // Publication has slowed down, measure it again
+            lagHighMillis = -1;
+        }
+    }
+    
+    /**
+     * Record a poll that did not happen or failed, without learning anything from it
+     */
+    void skipped(long now) {
+        lastPollTime = now;
+    }
+    
+    /**
+     * How long to wait from now until the next regular poll, also used to reschedule when the interval changes
+     */
+    long nextDelay(long now) {
+        long earliest = lastPollTime + intervalMillis;
+        long target = earliest;
+        if (cadenceMillis > 0 && newestTradeMillis > 0) {
+            long lag = aimedLagMillis() + MARGIN_MILLIS;
+            // First expected publication once the interval has passed, never one before it
+            long sinceTrade = earliest - lag - newestTradeMillis;
+            long periods = Math.max(0, -Math.floorDiv(-sinceTrade, cadenceMillis));
+            target = Math.max(earliest, newestTradeMillis + periods * cadenceMillis + lag);
+        }
+        return Math.max(0, target - now);
+    }
+    
+    /**
+     * Halfway between the lag bounds while they are apart, otherwise the upper one
+     */
+    private long aimedLagMillis() {
+        if (lagHighMillis < 0) {
+            return Math.max(DEFAULT_LAG_MILLIS, lagLowMillis + LAG_PRECISION_MILLIS);
+        }
+        if (lagHighMillis - lagLowMillis > LAG_PRECISION_MILLIS) {
+            return (lagLowMillis + lagHighMillis) / 2;
+        }
+        return lagHighMillis;
+    }
+    
+    /**
+     * Fold one movement of the newest trade time into the cadence, counting a movement that spans
+     * several publications as that many
+     */
+    private void learnCadence(long advanceMillis) {
+        if (cadenceMillis == 0) {
+            cadenceMillis = clampCadence(advanceMillis);
+            return;
+        }
+        long periods = Math.max(1, Math.round((double) advanceMillis / cadenceMillis));
+        long sample = advanceMillis / periods;
+        // Exponentially weighted, a quarter of each new sample
+        cadenceMillis = clampCadence(cadenceMillis + (sample - cadenceMillis) / 4);
+    }
+    
+    private static long clampCadence(long cadenceMillis) {
+        return Math.max(MIN_CADENCE_MILLIS, Math.min(MAX_CADENCE_MILLIS, cadenceMillis));
+    }
+}
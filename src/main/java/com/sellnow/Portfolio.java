@@ -0,0 +1,225 @@
+package com.sellnow;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Total value of held items at or near their all-time high, per color tier
+ * Each held item remembers what it contributes, so container changes only re-evaluate items whose
+ * quantity changed and {@link PriceDeltaEvent}s only the items they list, instead of rescanning the bank
+ */
+@Singleton
+class Portfolio {
+    
+    private static final int NOT_COUNTED = -1;
+    
+    private final GEPriceService priceService;
+    
+    // Guarded by this
+    private final Map<Integer, Map<Integer, Long>> containers = new HashMap<>();
+    private final Map<Integer, Holding> holdings = new HashMap<>();
+    private final long[] tierValues = new long[ItemPriceData.TIER_COUNT];
+    private final int[] tierCounts = new int[ItemPriceData.TIER_COUNT];
+    private long totalValue;
+    private int nearPercent;
+    
+    private volatile Summary summary = new Summary(0, new long[ItemPriceData.TIER_COUNT],
+        new int[ItemPriceData.TIER_COUNT]);
+    
+    @Inject
+    Portfolio(GEPriceService priceService) {
+        this.priceService = priceService;
+    }
+    
+    /**
+     * Replace the contents of a container, applying only the quantity changes
+     * @param canonicalItemIds The container's items with noted and placeholder IDs resolved
+     */
+    synchronized void setContainer(int containerId, int[] canonicalItemIds, int[] quantities) {
+        Map<Integer, Long> contents = new HashMap<>();
+        for (int i = 0; i < canonicalItemIds.length; i++) {
+            if (canonicalItemIds[i] > 0 && quantities[i] > 0) {
+                contents.merge(canonicalItemIds[i], (long) quantities[i], Long::sum);
+            }
+        }
+        
+        Map<Integer, Long> previous = containers.put(containerId, contents);
+        if (previous == null) {
+            previous = Map.of();
+        }
+        
+        PriceTable prices = priceService.getPriceTable();
+        boolean changed = false;
+        for (Map.Entry<Integer, Long> entry : contents.entrySet()) {
+            long delta = entry.getValue() - previous.getOrDefault(entry.getKey(), 0L);
+            if (delta != 0) {
+                changed |= adjustQuantity(entry.getKey(), delta, prices);
+            }
+        }
+        for (Map.Entry<Integer, Long> entry : previous.entrySet()) {
+            if (!contents.containsKey(entry.getKey())) {
+                changed |= adjustQuantity(entry.getKey(), -entry.getValue(), prices);
+            }
+        }
+        
+        if (changed) {
+            publish();
+        }
+    }
+    
+    /**
+     * Re-evaluate the held items a price update changed
+     */
+    synchronized void applyDelta(PriceDeltaEvent delta) {
+        if (holdings.isEmpty()) {
+            return;
+        }
+        PriceTable prices = delta.getPrices();
+        boolean changed = evaluate(delta.getPriceChanged(), prices);
+        changed |= evaluate(delta.getAllTimeHighChanged(), prices);
+        changed |= evaluate(delta.getReachedAllTimeHigh(), prices);
+        changed |= evaluate(delta.getLostAllTimeHigh(), prices);
+        if (changed) {
+            publish();
+        }
+    }
+    
+    /**
+     * Change how close to its all-time high an item must be to count, re-evaluating every holding
+     */
+    synchronized void setNearPercent(int nearPercent) {
+        if (nearPercent == this.nearPercent) {
+            return;
+        }
+        this.nearPercent = nearPercent;
+        
+        PriceTable prices = priceService.getPriceTable();
+        for (Map.Entry<Integer, Holding> entry : holdings.entrySet()) {
+            evaluate(entry.getKey(), entry.getValue(), prices);
+        }
+        publish();
+    }
+    
+    /**
+     * Forget all containers
+     */
+    synchronized void clear() {
+        containers.clear();
+        holdings.clear();
+        Arrays.fill(tierValues, 0);
+        Arrays.fill(tierCounts, 0);
+        totalValue = 0;
+        publish();
+    }
+    
+    /**
+     * Get the latest totals, safe to call from any thread
+     */
+    Summary getSummary() {
+        return summary;
+    }
+    
+    private boolean adjustQuantity(int itemId, long delta, PriceTable prices) {
+        Holding holding = holdings.computeIfAbsent(itemId, id -> new Holding());
+        holding.quantity += delta;
+        if (holding.quantity <= 0) {
+            holding.quantity = 0;
+            boolean changed = evaluate(itemId, holding, prices);
+            holdings.remove(itemId);
+            return changed;
+        }
+        return evaluate(itemId, holding, prices);
+    }
+    
+    private boolean evaluate(int[] itemIds, PriceTable prices) {
+        boolean changed = false;
+        for (int itemId : itemIds) {
+            Holding holding = holdings.get(itemId);
+            if (holding != null) {
+                changed |= evaluate(itemId, holding, prices);
+            }
+        }
+        return changed;
+    }
+    
+    /**
+     * Replace a holding's contribution with one computed from the given prices
+     * @return true if the totals changed
+     */
+    private boolean evaluate(int itemId, Holding holding, PriceTable prices) {
+        int tier = NOT_COUNTED;
+        long value = 0;
+        if (holding.quantity > 0 && prices.isNearAllTimeHigh(itemId, nearPercent)) {
+            tier = prices.getColorTier(itemId);
+            value = holding.quantity * prices.getCurrentPrice(itemId);
+        }
+        if (tier == holding.tier && value == holding.value) {
+            return false;
+        }
+        
+        if (holding.tier != NOT_COUNTED) {
+            tierValues[holding.tier] -= holding.value;
+            tierCounts[holding.tier]--;
+            totalValue -= holding.value;
+        }
+        if (tier != NOT_COUNTED) {
+            tierValues[tier] += value;
+            tierCounts[tier]++;
+            totalValue += value;
+        }
+        holding.tier = tier;
+        holding.value = value;
+        return true;
+    }
+    
+    private void publish() {
+        summary = new Summary(totalValue, tierValues.clone(), tierCounts.clone());
+    }
+    
+    /**
+     * What one held item currently adds to the totals
+     */
+    private static final class Holding {
+        private long quantity;
+        private long value;
+        private int tier = NOT_COUNTED;
+    }
+    
+    /**
+     * Immutable totals at one point in time
+     */
+    static final class Summary {
+        private final long totalValue;
+        private final long[] tierValues;
+        private final int[] tierCounts;
+        
+        private Summary(long totalValue, long[] tierValues, int[] tierCounts) {
+            this.totalValue = totalValue;
+            this.tierValues = tierValues;
+            this.tierCounts = tierCounts;
+        }
+        
+        long getTotalValue() {
+            return totalValue;
+        }
+        
+        long getTierValue(int tier) {
+            return tierValues[tier];
+        }
+        
+        int getTierCount(int tier) {
+            return tierCounts[tier];
+        }
+        
+        int getItemCount() {
+            int count = 0;
+            for (int tierCount : tierCounts) {
+                count += tierCount;
+            }
+            return count;
+        }
+    }
+}
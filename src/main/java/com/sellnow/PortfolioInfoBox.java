@@ -0,0 +1,95 @@
+package com.sellnow;
+
+import net.runelite.client.plugins.Plugin;
+import net.runelite.client.ui.overlay.infobox.InfoBox;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.text.NumberFormat;
+import java.util.Locale;
+
+/**
+ * Info box with the value of held items at or near their all-time high, broken down per tier in its tooltip
+ * The text is only rebuilt when the portfolio publishes new totals
+ */
+class PortfolioInfoBox extends InfoBox {
+    
+    private static final String[] TIER_NAMES = {"< 10k", "10k-100k", "100k-1m", "1m-10m", "10m-100m", "100m-1b", ">= 1b"};
+    
+    private final Portfolio portfolio;
+    private final SellNowConfig config;
+    private final NumberFormat numberFormat = NumberFormat.getInstance(Locale.US);
+    
+    private Portfolio.Summary shownSummary;
+    private String text;
+    private String tooltip;
+    
+    PortfolioInfoBox(BufferedImage image, Plugin plugin, Portfolio portfolio, SellNowConfig config) {
+        super(image, plugin);
+        this.portfolio = portfolio;
+        this.config = config;
+    }
+    
+    @Override
+    public String getText() {
+        refresh();
+        return text;
+    }
+    
+    @Override
+    public Color getTextColor() {
+        return config.colorGreen();
+    }
+    
+    @Override
+    public String getTooltip() {
+        refresh();
+        return tooltip;
+    }
+    
+    @Override
+    public boolean render() {
+        return portfolio.getSummary().getItemCount() > 0;
+    }
+    
+    private void refresh() {
+        Portfolio.Summary summary = portfolio.getSummary();
+        if (summary == shownSummary) {
+            return;
+        }
+        shownSummary = summary;
+        text = formatShort(summary.getTotalValue());
+        
+        StringBuilder builder = new StringBuilder("Sellable at all-time high: ")
+            .append(numberFormat.format(summary.getTotalValue()))
+            .append(" gp");
+        for (int tier = ItemPriceData.TIER_COUNT - 1; tier >= 0; tier--) {
+            if (summary.getTierCount(tier) > 0) {
+                builder.append("</br>")
+                    .append(TIER_NAMES[tier])
+                    .append(": ")
+                    .append(summary.getTierCount(tier))
+                    .append(summary.getTierCount(tier) == 1 ? " item, " : " items, ")
+                    .append(numberFormat.format(summary.getTierValue(tier)))
+                    .append(" gp");
+            }
+        }
+        tooltip = builder.toString();
+    }
+    
+    /**
+     * Format a value in the compact style of the stack size labels, e.g. 950K or 12.3M
+     */
+    private static String formatShort(long value) {
+        if (value >= 1_000_000_000L) {
+            return String.format(Locale.US, "%.1fB", value / 1_000_000_000.0);
+        } else if (value >= 10_000_000L) {
+            return (value / 1_000_000) + "M";
+        } else if (value >= 1_000_000L) {
+            return String.format(Locale.US, "%.1fM", value / 1_000_000.0);
+        } else if (value >= 100_000L) {
+            return (value / 1000) + "K";
+        }
+        return Long.toString(value);
+    }
+}
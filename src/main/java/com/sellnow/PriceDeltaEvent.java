@@ -0,0 +1,127 @@
+package com.sellnow;
+
+import java.util.Arrays;
+
+/**
+ * Posted on the event bus once per applied price update, listing only the items that changed
+ * Posted from the thread that applied the update, not the client thread
+ * The arrays are shared between subscribers and must not be modified
+ */
+public class PriceDeltaEvent {
+    
+    private final PriceTable prices;
+    private final int[] priceChanged;
+    private final int[] allTimeHighChanged;
+    private final int[] reachedAllTimeHigh;
+    private final int[] lostAllTimeHigh;
+    
+    PriceDeltaEvent(PriceTable prices, int[] priceChanged, int[] allTimeHighChanged, int[] reachedAllTimeHigh,
+                    int[] lostAllTimeHigh) {
+        this.prices = prices;
+        this.priceChanged = priceChanged;
+        this.allTimeHighChanged = allTimeHighChanged;
+        this.reachedAllTimeHigh = reachedAllTimeHigh;
+        this.lostAllTimeHigh = lostAllTimeHigh;
+    }
+    
+    /**
+     * Get the price table the update produced
+     */
+    public PriceTable getPrices() {
+        return prices;
+    }
+    
+    /**
+     * Get the items whose current price moved
+     */
+    public int[] getPriceChanged() {
+        return priceChanged;
+    }
+    
+    /**
+     * Get the items whose all-time high moved, whether or not their price did
+     * With the price changes these are every item whose distance from its high changed, so a consumer can
+     * re-check a band such as near its all-time high against its own percent
+     */
+    public int[] getAllTimeHighChanged() {
+        return allTimeHighChanged;
+    }
+    
+    /**
+     * Get the items that were not at their all-time high before the update and are now
+     */
+    public int[] getReachedAllTimeHigh() {
+        return reachedAllTimeHigh;
+    }
+    
+    /**
+     * Get the items that were at their all-time high before the update and no longer are
+     */
+    public int[] getLostAllTimeHigh() {
+        return lostAllTimeHigh;
+    }
+    
+    /**
+     * Collects the changes of one update in reusable primitive buffers
+     * Not thread safe, each writer uses its own
+     */
+    static final class Builder {
+        private int[] priceChanged = new int[256];
+        private int[] highChanged = new int[256];
+        private int[] reached = new int[64];
+        private int[] lost = new int[64];
+        private int priceChangedCount;
+        private int highChangedCount;
+        private int reachedCount;
+        private int lostCount;
+        
+        void clear() {
+            priceChangedCount = 0;
+            highChangedCount = 0;
+            reachedCount = 0;
+            lostCount = 0;
+        }
+        
+        /**
+         * Record an item's change
+         * @param oldPrice The item's price before the update
+         * @param oldAllTimeHigh The item's all-time high before the update
+         * @param wasAtAllTimeHigh Whether the item was at its all-time high before the update
+         * @param table The table after the update
+         */
+        void record(int itemId, long oldPrice, long oldAllTimeHigh, boolean wasAtAllTimeHigh, PriceTable table) {
+            if (table.getCurrentPrice(itemId) != oldPrice) {
+                priceChanged = append(priceChanged, priceChangedCount++, itemId);
+            }
+            if (table.getAllTimeHigh(itemId) != oldAllTimeHigh) {
+                highChanged = append(highChanged, highChangedCount++, itemId);
+            }
+            boolean atAllTimeHigh = table.isAtAllTimeHigh(itemId);
+            if (atAllTimeHigh && !wasAtAllTimeHigh) {
+                reached = append(reached, reachedCount++, itemId);
+            } else if (!atAllTimeHigh && wasAtAllTimeHigh) {
+                lost = append(lost, lostCount++, itemId);
+            }
+        }
+        
+        boolean isEmpty() {
+            return priceChangedCount == 0 && highChangedCount == 0 && reachedCount == 0 && lostCount == 0;
+        }
+        
+        PriceDeltaEvent build(PriceTable prices) {
+            return new PriceDeltaEvent(prices,
+                Arrays.copyOf(priceChanged, priceChangedCount),
+                Arrays.copyOf(highChanged, highChangedCount),
+                Arrays.copyOf(reached, reachedCount),
+                Arrays.copyOf(lost, lostCount));
+        }
+        
+        private static int[] append(int[] items, int index, int itemId) {
+            if (index == items.length) {
+                items = Arrays.copyOf(items, items.length * 2);
+            }
+            items[index] = itemId;
+            return items;
+        }
+    }
+}
@@ -0,0 +1,786 @@
+package com.sellnow;
+
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.RuneLite;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent price history for held items, kept in the RuneLite directory
+ * Each poll appends one block of varint-encoded records to a raw log, with times, item IDs and prices
+ * stored as deltas from the previous block, the previous record and the item's previous logged price.
+ * A background compaction folds the log into fixed rings of 5 minute, 1 hour and 1 day buckets in a
+ * memory-mapped file and then starts the log over, so disk use stays bounded however long it runs.
+ * Only one client on the machine writes, holding a lock on the log; the others read its rollups
+ */
+@Slf4j
+@Singleton
+public class PriceHistoryStore {
+    
+    private static final int LOG_MAGIC = 0x534E484C; // "SNHL"
+    private static final int ROLLUP_MAGIC = 0x534E5048; // "SNPH"
+    private static final int VERSION = 1;
+    private static final int LOG_HEADER_SIZE = 16;
+    private static final int ROLLUP_HEADER_SIZE = 32;
+    
+    // Compact once the log holds this much, or this long after the last compaction
+    private static final long COMPACT_LOG_BYTES = 64 * 1024;
+    private static final long COMPACT_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(15);
+    // How often a reading client remaps the rollups to find items the writing client added
+    private static final long REFRESH_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    
+    /** Spans {@link #getRange} serves */
+    static final int MONTH = 0;
+    static final int YEAR = 1;
+    private static final int[] SPAN_DAYS = {30, 365};
+    
+    /** Most items with history at once, the least recently updated item's history is dropped beyond this */
+    static final int MAX_SLOTS = 1024;
+    private static final int MIN_SLOTS = 64;
+    private static final int DIRECTORY_ENTRY_SIZE = 8;
+    private static final int DATA_OFFSET = ROLLUP_HEADER_SIZE + MAX_SLOTS * DIRECTORY_ENTRY_SIZE;
+    
+    // Each bucket holds its index, min, max, count and sum
+    private static final int BUCKET_SIZE = 24;
+    
+    // Bucket width in seconds and how many buckets each tier keeps: a day of 5 minute buckets,
+    // 30 days of hourly buckets and 400 days of daily buckets
+    private static final int[] TIER_SECONDS = {300, 3600, 86400};
+    private static final int[] TIER_BUCKETS = {288, 720, 400};
+    private static final int[] TIER_OFFSETS = new int[TIER_SECONDS.length];
+    private static final int SLOT_SIZE;
+    
+    static {
+        int offset = 0;
+        for (int tier = 0; tier < TIER_SECONDS.length; tier++) {
+            TIER_OFFSETS[tier] = offset;
+            offset += TIER_BUCKETS[tier] * BUCKET_SIZE;
+        }
+        SLOT_SIZE = offset;
+    }
+    
+    private final File logFile;
+    private final File rollupFile;
+    private FileChannel logChannel;
+    private FileLock logLock;
+    private FileChannel rollupChannel;
+    private MappedByteBuffer rollups;
+    private int slotCapacity;
+    private int usedSlots;
+    // Slot + 1 by item ID, 0 for items without history
+    private int[] slotByItem = new int[0];
+    private boolean failed;
+    // Another client holds the log lock, so this one only reads the rollups
+    private boolean readOnly;
+    
+    // Immutable range snapshots by item ID, replaced whole by the price update thread and read lock-free
+    private volatile ItemRanges[] ranges = new ItemRanges[0];
+    private int rangesItemsVersion = -1;
+    private long rangesTime;
+    
+    private ExecutorService compactor;
+    private boolean compactionPending;
+    private long lastCompactTime;
+    private int logSequence;
+    private long logSize;
+    
+    // The block being collected for the current poll
+    private int[] blockItems = new int[256];
+    private int[] blockPrices = new int[256];
+    private int blockCount;
+    private long blockTime;
+    
+    // Encoder state for the current log, reset whenever the log starts over
+    private byte[] records = new byte[4096];
+    private final byte[] blockHeader = new byte[30];
+    private long lastBlockTime;
+    private int[] lastLoggedPrice = new int[0];
+    private int cursor;
+    
+    @Inject
+    public PriceHistoryStore() {
+        this(new File(RuneLite.RUNELITE_DIR, "sell-now"));
+    }
+    
+    PriceHistoryStore(File dir) {
+        this.logFile = new File(dir, "price-history.log");
+        this.rollupFile = new File(dir, "price-history.dat");
+    }
+    
+    /**
+     * Start a block of records for one poll
+     * Only called from the price update thread, as are {@link #append} and {@link #commit}
+     */
+    synchronized void begin(long timestamp) {
+        blockTime = TimeUnit.MILLISECONDS.toSeconds(timestamp);
+        blockCount = 0;
+    }
+    
+    /**
+     * Add an item's new price to the current block
+     */
+    synchronized void append(int itemId, long price) {
+        if (itemId < 0 || price <= 0) {
+            return;
+        }
+        if (blockCount == blockItems.length) {
+            blockItems = Arrays.copyOf(blockItems, blockCount * 2);
+            blockPrices = Arrays.copyOf(blockPrices, blockCount * 2);
+        }
+        blockItems[blockCount] = itemId;
+        blockPrices[blockCount] = (int) Math.min(price, Integer.MAX_VALUE);
+        blockCount++;
+    }
+    
+    /**
+     * Write the current block to the log, scheduling a compaction if the log is due one
+     */
+    synchronized void commit() {
+        if (blockCount == 0 || !open() || readOnly && !takeOverWriting()) {
+            return;
+        }
+        
+        // Encoded here rather than in append, so a compaction between polls never splits a block's delta state
+        if (records.length < blockCount * 20) {
+            records = new byte[blockCount * 20];
+        }
+        int recordsLength = 0;
+        int lastItemId = 0;
+        for (int i = 0; i < blockCount; i++) {
+            int itemId = blockItems[i];
+            if (itemId >= lastLoggedPrice.length) {
+                lastLoggedPrice = Arrays.copyOf(lastLoggedPrice, Math.max(itemId + 1, lastLoggedPrice.length * 2));
+            }
+            recordsLength = writeVarint(records, recordsLength, zigzag(itemId - lastItemId));
+            long priceDelta = (long) blockPrices[i] - lastLoggedPrice[itemId];
+            recordsLength = writeVarint(records, recordsLength, zigzag(priceDelta));
+            lastItemId = itemId;
+            lastLoggedPrice[itemId] = blockPrices[i];
+        }
+        
+        // Block: payload length, time delta from the previous block, record count, then the records
+        int headerLength = writeVarint(blockHeader, 10, zigzag(blockTime - lastBlockTime));
+        headerLength = writeVarint(blockHeader, headerLength, blockCount);
+        int payload = headerLength - 10 + recordsLength;
+        int lengthSize = writeVarint(blockHeader, 0, payload);
+        System.arraycopy(blockHeader, 10, blockHeader, lengthSize, headerLength - 10);
+        headerLength = lengthSize + headerLength - 10;
+        
+        try {
+            logChannel.position(logSize);
+            ByteBuffer[] buffers = {
+                ByteBuffer.wrap(blockHeader, 0, headerLength),
+                ByteBuffer.wrap(records, 0, recordsLength)
+            };
+            long remaining = headerLength + recordsLength;
+            while (remaining > 0) {
+                remaining -= logChannel.write(buffers);
+            }
+            logSize += headerLength + recordsLength;
+            lastBlockTime = blockTime;
+        } catch (IOException e) {
+            log.warn("Unable to write price history, history will not be kept", e);
+            failed = true;
+            release();
+            return;
+        }
+        blockCount = 0;
+        
+        if (!compactionPending && (logSize - LOG_HEADER_SIZE >= COMPACT_LOG_BYTES
+            || System.currentTimeMillis() - lastCompactTime >= COMPACT_INTERVAL_MILLIS)) {
+            if (compactor == null) {
+                compactor = Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "sell-now-history");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            compactionPending = true;
+            compactor.execute(this::compact);
+        }
+    }
+    
+    /**
+     * Rebuild the range snapshots read by {@link #getRange}, for the given items
+     * Only called from the price update thread, which is where the files are opened, the log folded and a
+     * reading client's rollups remapped, so reads never wait on disk. Does nothing if the items are unchanged
+     * and the snapshots are less than a minute old
+     * @param itemsVersion Changes whenever the set of items does
+     */
+    synchronized void refreshRanges(BitSet itemIds, int itemsVersion) {
+        long now = System.currentTimeMillis();
+        if (itemsVersion == rangesItemsVersion && now - rangesTime < REFRESH_INTERVAL_MILLIS) {
+            return;
+        }
+        rangesItemsVersion = itemsVersion;
+        rangesTime = now;
+        if (!open()) {
+            ranges = new ItemRanges[0];
+            return;
+        }
+        if (readOnly) {
+            try {
+                refreshReadOnly();
+            } catch (IOException e) {
+                log.debug("Unable to refresh price history", e);
+            }
+        }
+        
+        ItemRanges[] built = new ItemRanges[itemIds.length()];
+        long nowSeconds = TimeUnit.MILLISECONDS.toSeconds(now);
+        for (int itemId = itemIds.nextSetBit(0); itemId >= 0; itemId = itemIds.nextSetBit(itemId + 1)) {
+            int slot = rollups != null ? slotOf(itemId) : -1;
+            if (slot >= 0) {
+                built[itemId] = new ItemRanges(buckets(slot, MONTH, nowSeconds), buckets(slot, YEAR, nowSeconds));
+            }
+        }
+        ranges = built;
+    }
+    
+    /**
+     * Get an item's price range over the last 30 days or year, with a price placed in it
+     * Served from the snapshot of the rollups last taken by {@link #refreshRanges}, so it never locks or touches
+     * the files; points still in the raw log are not included
+     * @param span {@link #MONTH} or {@link #YEAR}
+     * @return The range, or null if there is no history for the item in the span
+     */
+    PriceRange getRange(int itemId, int span, long price) {
+        ItemRanges[] current = ranges;
+        if (itemId < 0 || itemId >= current.length || current[itemId] == null) {
+            return null;
+        }
+        Buckets buckets = span == YEAR ? current[itemId].year : current[itemId].month;
+        if (buckets.count == 0) {
+            return null;
+        }
+        
+        // Treat each bucket's prices as spread evenly between its min and max, as PriceStatistics does
+        double below = 0;
+        for (int i = 0; i < buckets.mins.length; i++) {
+            if (price >= buckets.maxs[i]) {
+                below += buckets.counts[i];
+            } else if (price >= buckets.mins[i]) {
+                below += buckets.counts[i] * (double) (price - buckets.mins[i]) / (buckets.maxs[i] - buckets.mins[i]);
+            }
+        }
+        return new PriceRange(buckets.min, buckets.max, buckets.sum / buckets.count, buckets.count,
+            below / buckets.count);
+    }
+    
+    /**
+     * Copy the non-empty buckets of a slot within a span ending now, from the finest tier that covers it
+     */
+    private Buckets buckets(int slot, int span, long now) {
+        long spanSeconds = TimeUnit.DAYS.toSeconds(SPAN_DAYS[span]);
+        int tier = 0;
+        while (tier < TIER_SECONDS.length - 1 && (long) TIER_SECONDS[tier] * TIER_BUCKETS[tier] < spanSeconds) {
+            tier++;
+        }
+        
+        long newest = now / TIER_SECONDS[tier];
+        long oldest = Math.max((now - spanSeconds) / TIER_SECONDS[tier], newest - TIER_BUCKETS[tier] + 1);
+        int base = slotOffset(slot) + TIER_OFFSETS[tier];
+        int[] mins = new int[(int) (newest - oldest + 1)];
+        int[] maxs = new int[mins.length];
+        int[] counts = new int[mins.length];
+        long sum = 0;
+        int used = 0;
+        for (long bucket = oldest; bucket <= newest; bucket++) {
+            int offset = base + (int) (bucket % TIER_BUCKETS[tier]) * BUCKET_SIZE;
+            int bucketCount = rollups.getInt(offset + 12);
+            if (rollups.getInt(offset) == bucket && bucketCount > 0) {
+                mins[used] = rollups.getInt(offset + 4);
+                maxs[used] = rollups.getInt(offset + 8);
+                counts[used] = bucketCount;
+                sum += rollups.getLong(offset + 16);
+                used++;
+            }
+        }
+        return new Buckets(Arrays.copyOf(mins, used), Arrays.copyOf(maxs, used), Arrays.copyOf(counts, used), sum);
+    }
+    
+    /**
+     * Fold the raw log into the rollups and start the log over
+     * Runs on the history thread
+     */
+    private synchronized void compact() {
+        compactionPending = false;
+        if (rollups == null || readOnly) {
+            return;
+        }
+        
+        try {
+            fold(readLog());
+        } catch (IOException e) {
+            log.warn("Unable to compact price history", e);
+        }
+    }
+    
+    private void fold(byte[] data) throws IOException {
+        replay(data, true);
+        rollups.force();
+        // Mark the log as folded before starting it over, so a crash in between cannot fold it twice
+        rollups.putInt(12, logSequence);
+        rollups.force();
+        resetLog(logSequence + 1);
+    }
+    
+    /**
+     * Decode the log from the start, rebuilding the encoder state and optionally folding each record
+     * Stops at the first incomplete block, which is what a crash mid-write leaves behind
+     */
+    private void replay(byte[] data, boolean fold) {
+        lastBlockTime = 0;
+        Arrays.fill(lastLoggedPrice, 0);
+        int position = LOG_HEADER_SIZE;
+        while (position < data.length) {
+            cursor = position;
+            long payload = readVarint(data, data.length);
+            if (payload < 0 || cursor + payload > data.length) {
+                break;
+            }
+            int end = cursor + (int) payload;
+            long time = lastBlockTime + unzigzag(readVarint(data, end));
+            long count = readVarint(data, end);
+            int itemId = 0;
+            for (long i = 0; i < count && cursor < end; i++) {
+                itemId += (int) unzigzag(readVarint(data, end));
+                long delta = unzigzag(readVarint(data, end));
+                if (itemId < 0) {
+                    break;
+                }
+                if (itemId >= lastLoggedPrice.length) {
+                    lastLoggedPrice = Arrays.copyOf(lastLoggedPrice, Math.max(itemId + 1, lastLoggedPrice.length * 2));
+                }
+                lastLoggedPrice[itemId] += (int) delta;
+                if (fold) {
+                    fold(itemId, lastLoggedPrice[itemId], time);
+                }
+            }
+            lastBlockTime = time;
+            position = end;
+        }
+    }
+    
+    /**
+     * Add one price to each tier's bucket for its time
+     */
+    private void fold(int itemId, int price, long timeSeconds) {
+        int slot = slotFor(itemId, timeSeconds);
+        if (slot < 0 || price <= 0) {
+            return;
+        }
+        
+        int base = slotOffset(slot);
+        for (int tier = 0; tier < TIER_SECONDS.length; tier++) {
+            long bucket = timeSeconds / TIER_SECONDS[tier];
+            int offset = base + TIER_OFFSETS[tier] + (int) (bucket % TIER_BUCKETS[tier]) * BUCKET_SIZE;
+            long stored = rollups.getInt(offset);
+            int count = rollups.getInt(offset + 12);
+            if (stored == bucket && count > 0) {
+                rollups.putInt(offset + 4, Math.min(rollups.getInt(offset + 4), price));
+                rollups.putInt(offset + 8, Math.max(rollups.getInt(offset + 8), price));
+                rollups.putInt(offset + 12, count + 1);
+                rollups.putLong(offset + 16, rollups.getLong(offset + 16) + price);
+            } else if (stored < bucket || count == 0) {
+                // The ring has wrapped past the old bucket, replace it
+                rollups.putInt(offset, (int) bucket);
+                rollups.putInt(offset + 4, price);
+                rollups.putInt(offset + 8, price);
+                rollups.putInt(offset + 12, 1);
+                rollups.putLong(offset + 16, price);
+            }
+            // Otherwise the point is older than the ring keeps, drop it
+        }
+    }
+    
+    /**
+     * Find or allocate an item's slot, reusing the least recently updated slot once all are taken
+     */
+    private int slotFor(int itemId, long timeSeconds) {
+        if (itemId >= slotByItem.length) {
+            slotByItem = Arrays.copyOf(slotByItem, Math.max(itemId + 1, slotByItem.length * 2));
+        }
+        
+        int slot = slotByItem[itemId] - 1;
+        if (slot < 0) {
+            if (usedSlots < MAX_SLOTS) {
+                slot = usedSlots;
+                try {
+                    ensureCapacity(slot + 1);
+                } catch (IOException e) {
+                    log.warn("Unable to grow price history", e);
+                    return -1;
+                }
+                usedSlots++;
+            } else {
+                slot = leastRecentlyUpdatedSlot();
+                int evicted = rollups.getInt(ROLLUP_HEADER_SIZE + slot * DIRECTORY_ENTRY_SIZE) - 1;
+                if (evicted >= 0 && evicted < slotByItem.length) {
+                    slotByItem[evicted] = 0;
+                }
+                int offset = slotOffset(slot);
+                for (int i = 0; i < SLOT_SIZE; i += 8) {
+                    rollups.putLong(offset + i, 0);
+                }
+            }
+            rollups.putInt(ROLLUP_HEADER_SIZE + slot * DIRECTORY_ENTRY_SIZE, itemId + 1);
+            slotByItem[itemId] = slot + 1;
+        }
+        
+        int directory = ROLLUP_HEADER_SIZE + slot * DIRECTORY_ENTRY_SIZE + 4;
+        int minutes = (int) (timeSeconds / 60);
+        if (minutes > rollups.getInt(directory)) {
+            rollups.putInt(directory, minutes);
+        }
+        return slot;
+    }
+    
+    private int leastRecentlyUpdatedSlot() {
+        int oldest = 0;
+        int oldestMinutes = Integer.MAX_VALUE;
+        for (int slot = 0; slot < usedSlots; slot++) {
+            int minutes = rollups.getInt(ROLLUP_HEADER_SIZE + slot * DIRECTORY_ENTRY_SIZE + 4);
+            if (minutes < oldestMinutes) {
+                oldest = slot;
+                oldestMinutes = minutes;
+            }
+        }
+        return oldest;
+    }
+    
+    /**
+     * Find an item's slot, checking the directory in case the writing client reused it for another item
+     * @return The slot, or -1 if the item has no history
+     */
+    private int slotOf(int itemId) {
+        if (rollups == null || itemId >= slotByItem.length || slotByItem[itemId] == 0) {
+            return -1;
+        }
+        int slot = slotByItem[itemId] - 1;
+        if (rollups.getInt(ROLLUP_HEADER_SIZE + slot * DIRECTORY_ENTRY_SIZE) != itemId + 1) {
+            slotByItem[itemId] = 0;
+            return -1;
+        }
+        return slot;
+    }
+    
+    private static int slotOffset(int slot) {
+        return DATA_OFFSET + slot * SLOT_SIZE;
+    }
+    
+    /**
+     * Open both files, folding whatever an earlier session left in the log
+     * If another client already writes the history, map its rollups read-only instead
+     * @return false if history cannot be kept this session
+     */
+    private boolean open() {
+        if (logChannel != null) {
+            return true;
+        }
+        if (failed) {
+            return false;
+        }
+        
+        try {
+            File dir = rollupFile.getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Unable to create " + dir);
+            }
+            
+            logChannel = FileChannel.open(logFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                logLock = logChannel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                logLock = null;
+            }
+            readOnly = logLock == null;
+            if (readOnly) {
+                log.debug("Price history is written by another client, reading it only");
+                refreshReadOnly();
+                return true;
+            }
+            
+            rollupChannel = FileChannel.open(rollupFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            int compactedSequence = -1;
+            if (rollupChannel.size() >= ROLLUP_HEADER_SIZE) {
+                MappedByteBuffer header = rollupChannel.map(FileChannel.MapMode.READ_ONLY, 0, ROLLUP_HEADER_SIZE);
+                if (header.getInt(0) != ROLLUP_MAGIC || header.getInt(4) != VERSION
+                    || rollupChannel.size() < DATA_OFFSET) {
+                    // Unknown format, start over rather than misread it
+                    rollupChannel.truncate(0);
+                } else {
+                    compactedSequence = header.getInt(12);
+                }
+            }
+            
+            slotCapacity = 0;
+            ensureCapacity((int) Math.max(0, (rollupChannel.size() - DATA_OFFSET) / SLOT_SIZE));
+            rollups.putInt(12, compactedSequence);
+            scanDirectory();
+            
+            logSize = logChannel.size();
+            byte[] data = readLog();
+            ByteBuffer header = ByteBuffer.wrap(data);
+            if (data.length >= LOG_HEADER_SIZE && header.getInt(0) == LOG_MAGIC && header.getInt(4) == VERSION) {
+                logSequence = header.getInt(8);
+                if (logSequence != compactedSequence) {
+                    fold(data);
+                } else {
+                    resetLog(logSequence + 1);
+                }
+            } else {
+                resetLog(compactedSequence + 1);
+            }
+            log.debug("Opened price history with {} items", usedSlots);
+            return true;
+        } catch (IOException e) {
+            log.warn("Unable to open price history, history will not be kept", e);
+            failed = true;
+            release();
+            return false;
+        }
+    }
+    
+    /**
+     * Map whatever the writing client has rolled up so far, read-only
+     */
+    private void refreshReadOnly() throws IOException {
+        if (rollupChannel == null) {
+            if (!rollupFile.isFile()) {
+                return;
+            }
+            rollupChannel = FileChannel.open(rollupFile.toPath(), StandardOpenOption.READ);
+        }
+        
+        long size = rollupChannel.size();
+        if (size < DATA_OFFSET) {
+            return;
+        }
+        rollups = rollupChannel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        if (rollups.getInt(0) != ROLLUP_MAGIC || rollups.getInt(4) != VERSION) {
+            rollups = null;
+            return;
+        }
+        slotCapacity = (int) Math.min(MAX_SLOTS, (size - DATA_OFFSET) / SLOT_SIZE);
+        Arrays.fill(slotByItem, 0);
+        scanDirectory();
+    }
+    
+    /**
+     * Take over writing once the client that held the log lock has exited
+     * @return true if this client now writes the history
+     */
+    private boolean takeOverWriting() {
+        try {
+            FileLock lock = logChannel.tryLock();
+            if (lock == null) {
+                return false;
+            }
+            lock.release();
+        } catch (IOException | OverlappingFileLockException e) {
+            return false;
+        }
+        
+        // Reopen as the writer, folding whatever the previous writer left in the log
+        release();
+        return open() && !readOnly;
+    }
+    
+    /**
+     * Rebuild the item to slot index from the directory, slots are taken in order so the first empty one ends it
+     */
+    private void scanDirectory() {
+        usedSlots = 0;
+        while (usedSlots < slotCapacity
+            && rollups.getInt(ROLLUP_HEADER_SIZE + usedSlots * DIRECTORY_ENTRY_SIZE) != 0) {
+            int itemId = rollups.getInt(ROLLUP_HEADER_SIZE + usedSlots * DIRECTORY_ENTRY_SIZE) - 1;
+            usedSlots++;
+            if (itemId >= slotByItem.length) {
+                slotByItem = Arrays.copyOf(slotByItem, Math.max(itemId + 1, slotByItem.length * 2));
+            }
+            slotByItem[itemId] = usedSlots;
+        }
+    }
+    
+    private void ensureCapacity(int required) throws IOException {
+        if (rollups != null && required <= slotCapacity) {
+            return;
+        }
+        
+        int newCapacity = Math.max(Math.max(required, slotCapacity), MIN_SLOTS);
+        if (rollups != null) {
+            newCapacity = Math.max(newCapacity, slotCapacity + (slotCapacity >> 1));
+        }
+        newCapacity = Math.min(newCapacity, MAX_SLOTS);
+        
+        rollups = rollupChannel.map(FileChannel.MapMode.READ_WRITE, 0, slotOffset(newCapacity));
+        rollups.putInt(0, ROLLUP_MAGIC);
+        rollups.putInt(4, VERSION);
+        rollups.putInt(8, newCapacity);
+        slotCapacity = newCapacity;
+    }
+    
+    private byte[] readLog() throws IOException {
+        ByteBuffer data = ByteBuffer.allocate((int) logSize);
+        while (data.hasRemaining() && logChannel.read(data, data.position()) >= 0) {
+            // Keep reading until the buffer is full or the file ends
+        }
+        return Arrays.copyOf(data.array(), data.position());
+    }
+    
+    /**
+     * Truncate the log to an empty one with a new sequence number
+     */
+    private void resetLog(int sequence) throws IOException {
+        logChannel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_SIZE);
+        header.putInt(LOG_MAGIC).putInt(VERSION).putInt(sequence).putInt(0).flip();
+        while (header.hasRemaining()) {
+            logChannel.write(header, header.position());
+        }
+        logSequence = sequence;
+        logSize = LOG_HEADER_SIZE;
+        lastBlockTime = 0;
+        Arrays.fill(lastLoggedPrice, 0);
+        lastCompactTime = System.currentTimeMillis();
+    }
+    
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+    
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+    
+    private static int writeVarint(byte[] out, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[position++] = (byte) value;
+        return position;
+    }
+    
+    /**
+     * Read a varint at the cursor, advancing it
+     * @return The value, or -1 if it runs past the limit
+     */
+    private long readVarint(byte[] data, int limit) {
+        long value = 0;
+        for (int shift = 0; shift < 64 && cursor < limit; shift += 7) {
+            byte b = data[cursor++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Flush pending writes and release the files
+     */
+    public synchronized void close() {
+        if (compactor != null) {
+            // Let a running compaction finish rather than interrupting its file writes
+            compactor.shutdown();
+            compactor = null;
+        }
+        compactionPending = false;
+        try {
+            if (rollups != null) {
+                rollups.force();
+            }
+        } finally {
+            release();
+        }
+    }
+    
+    private void release() {
+        try {
+            if (logChannel != null) {
+                logChannel.close();
+            }
+            if (rollupChannel != null) {
+                rollupChannel.close();
+            }
+        } catch (IOException e) {
+            log.warn("Error closing price history", e);
+        } finally {
+            logChannel = null;
+            logLock = null;
+            readOnly = false;
+            rollupChannel = null;
+            rollups = null;
+            lastBlockTime = 0;
+            Arrays.fill(lastLoggedPrice, 0);
+            slotCapacity = 0;
+            usedSlots = 0;
+            slotByItem = new int[0];
+            ranges = new ItemRanges[0];
+            rangesItemsVersion = -1;
+        }
+    }
+    
+    /**
+     * One item's snapshot for both spans
+     */
+    private static final class ItemRanges {
+        private final Buckets month;
+        private final Buckets year;
+        
+        ItemRanges(Buckets month, Buckets year) {
+            this.month = month;
+            this.year = year;
+        }
+    }
+    
+    /**
+     * The non-empty buckets of one span, with their totals
+     */
+    private static final class Buckets {
+        private final int[] mins;
+        private final int[] maxs;
+        private final int[] counts;
+        private final int min;
+        private final int max;
+        private final int count;
+        private final long sum;
+        
+        Buckets(int[] mins, int[] maxs, int[] counts, long sum) {
+            this.mins = mins;
+            this.maxs = maxs;
+            this.counts = counts;
+            this.sum = sum;
+            int min = Integer.MAX_VALUE;
+            int max = 0;
+            int count = 0;
+            for (int i = 0; i < mins.length; i++) {
+                min = Math.min(min, mins[i]);
+                max = Math.max(max, maxs[i]);
+                count += counts[i];
+            }
+            this.min = min;
+            this.max = max;
+            this.count = count;
+        }
+    }
+}
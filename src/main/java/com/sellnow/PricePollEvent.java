@@ -0,0 +1,42 @@
+package com.sellnow;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event for one /latest poll
+ */
+@Name("com.sellnow.PricePoll")
+@Label("Price Poll")
+@Category({"RuneLite", "Sell Now"})
+@Description("A poll of the OSRS Wiki /latest prices")
+class PricePollEvent extends jdk.jfr.Event {
+    
+    @Label("Outcome")
+    String outcome;
+    
+    @Label("Source")
+    String source;
+    
+    @Label("HTTP Status")
+    int status;
+    
+    @Label("Fetch Time")
+    @Timespan
+    long fetchTime;
+    
+    @Label("Bytes Received")
+    @DataAmount
+    long bytesReceived;
+    
+    @Label("Items Changed")
+    int itemsChanged;
+    
+    @Label("Parse Time")
+    @Timespan
+    long parseTime;
+}
@@ -0,0 +1,26 @@
+package com.sellnow;
+
+import lombok.Data;
+
+/**
+ * Immutable summary of an item's prices over a rolling window, from {@link PriceStatistics}
+ * or {@link PriceHistoryStore}
+ */
+@Data
+public class PriceRange {
+    private final long low;
+    private final long high;
+    private final long mean;
+    private final int samples;
+    
+    /** Approximate fraction of the window's prices at or below the price the range was requested for, 0 to 1 */
+    private final double percentile;
+    
+    public PriceRange(long low, long high, long mean, int samples, double percentile) {
+        this.low = low;
+        this.high = high;
+        this.mean = mean;
+        this.samples = samples;
+        this.percentile = percentile;
+    }
+}
@@ -0,0 +1,54 @@
+package com.sellnow;
+
+import java.io.IOException;
+
+/**
+ * Somewhere the latest prices can be fetched from
+ * {@link GEPriceService} polls a primary source and hedges with a fallback when it is slow or failing
+ * A source is only fetched from one thread at a time
+ */
+interface PriceSource {
+    
+    /**
+     * What a successful fetch produced
+     */
+    enum Result {
+        /** The batch holds new prices */
+        UPDATED,
+        /** The source returned the same prices as last time, the batch is empty */
+        UNCHANGED,
+        /** The source confirmed nothing changed without sending prices, the batch is empty */
+        NOT_MODIFIED
+    }
+    
+    /**
+     * Get a short name for logs and the debug panel
+     */
+    String getName();
+    
+    /**
+     * Fetch the latest prices into a batch, in /latest form with trade times in epoch seconds
+     * @param current The current prices, so a source can leave out items that did not move
+     * @throws IOException If the source failed, see {@link PriceSourceException} for HTTP failures
+     */
+    Result fetch(PriceTable current, PriceUpdateBatch batch) throws IOException;
+    
+    /**
+     * Called once the last fetched batch has been applied, so the source can remember what it delivered
+     * Fetches that are never acknowledged, e.g. because updates stopped meanwhile, are fetched again next time
+     */
+    default void acknowledge() {
+    }
+    
+    /**
+     * Abort a fetch in progress, from any thread
+     */
+    default void cancel() {
+    }
+    
+    /**
+     * Forget everything remembered from previous fetches
+     */
+    default void reset() {
+    }
+}
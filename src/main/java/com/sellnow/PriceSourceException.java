@@ -0,0 +1,29 @@
+package com.sellnow;
+
+import java.io.IOException;
+
+/**
+ * A price source answered with an HTTP error
+ */
+class PriceSourceException extends IOException {
+    
+    private final int status;
+    private final long retryAfterMillis;
+    
+    PriceSourceException(String message, int status, long retryAfterMillis) {
+        super(message);
+        this.status = status;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+    
+    int getStatus() {
+        return status;
+    }
+    
+    /**
+     * Get how long the source asked us to wait before trying again, or 0
+     */
+    long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
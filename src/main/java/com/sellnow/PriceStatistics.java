@@ -0,0 +1,275 @@
+package com.sellnow;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rolling 24 hour and 7 day price statistics per item
+ * Each item keeps a fixed ring of 3 hour buckets (min, max, sum and count), and each window keeps running
+ * min, max and sum that are updated in O(1) per price; a window's min or max is only recomputed over its
+ * buckets when an expiring bucket held it
+ * Only items in the {@link InterestSet} are tracked, and items that leave it are dropped, so memory is about
+ * 1 KB per held item rather than per item on the GE
+ */
+final class PriceStatistics {
+    
+    static final long BUCKET_MILLIS = TimeUnit.HOURS.toMillis(3);
+    static final int DAY_BUCKETS = 8;
+    static final int WEEK_BUCKETS = 56;
+    
+    // Grown by the price update thread, read by the client thread
+    private volatile ItemStatistics[] items = new ItemStatistics[0];
+    
+    /**
+     * Record a price for an item
+     * Only called from the price update thread
+     */
+    void record(int itemId, long price, long timestamp) {
+        if (itemId < 0 || price <= 0) {
+            return;
+        }
+        ItemStatistics[] current = items;
+        if (itemId >= current.length) {
+            current = Arrays.copyOf(current, Math.max(itemId + 1, current.length * 2));
+            items = current;
+        }
+        if (current[itemId] == null) {
+            current[itemId] = new ItemStatistics();
+        }
+        current[itemId].record(Math.min(price, Integer.MAX_VALUE), timestamp / BUCKET_MILLIS);
+    }
+    
+    /**
+     * Get an item's range over the 24 hours up to now
+     * @param price The price to place within the range, usually the current price
+     * @param now The current time in epoch milliseconds, buckets older than the window are left out
+     * @return The range, or null if no prices were recorded in the window
+     */
+    PriceRange getDayRange(int itemId, long price, long now) {
+        ItemStatistics stats = get(itemId);
+        return stats != null ? stats.range(false, price, now / BUCKET_MILLIS) : null;
+    }
+    
+    /**
+     * Get an item's range over the 7 days up to now
+     * @see #getDayRange(int, long, long)
+     */
+    PriceRange getWeekRange(int itemId, long price, long now) {
+        ItemStatistics stats = get(itemId);
+        return stats != null ? stats.range(true, price, now / BUCKET_MILLIS) : null;
+    }
+    
+    /**
+     * Drop the statistics of items that are not in a set
+     * Only called from the price update thread
+     */
+    void retain(BitSet itemIds) {
+        ItemStatistics[] current = items;
+        for (int itemId = 0; itemId < current.length; itemId++) {
+            if (current[itemId] != null && !itemIds.get(itemId)) {
+                current[itemId] = null;
+            }
+        }
+    }
+    
+    /**
+     * Drop all recorded prices
+     */
+    void clear() {
+        items = new ItemStatistics[0];
+    }
+    
+    private ItemStatistics get(int itemId) {
+        ItemStatistics[] current = items;
+        return itemId >= 0 && itemId < current.length ? current[itemId] : null;
+    }
+    
+    /**
+     * Ring of buckets for one item plus running aggregates for both windows
+     */
+    private static final class ItemStatistics {
+        private final int[] bucketMin = new int[WEEK_BUCKETS];
+        private final int[] bucketMax = new int[WEEK_BUCKETS];
+        private final long[] bucketSum = new long[WEEK_BUCKETS];
+        private final int[] bucketCount = new int[WEEK_BUCKETS];
+        private long newestBucket = -1;
+        
+        private final Window day = new Window(DAY_BUCKETS);
+        private final Window week = new Window(WEEK_BUCKETS);
+        
+        synchronized void record(long price, long bucket) {
+            if (bucket < newestBucket) {
+                // Out of order samples from before the newest bucket are dropped rather than rewinding
+                return;
+            }
+            if (bucket > newestBucket) {
+                advance(bucket);
+            }
+            
+            int slot = slot(bucket);
+            int value = (int) price;
+            if (bucketCount[slot] == 0 || value < bucketMin[slot]) {
+                bucketMin[slot] = value;
+            }
+            if (bucketCount[slot] == 0 || value > bucketMax[slot]) {
+                bucketMax[slot] = value;
+            }
+            bucketSum[slot] += value;
+            bucketCount[slot]++;
+            day.add(value);
+            week.add(value);
+        }
+        
+        /**
+         * Move the newest bucket forward, expiring buckets that fall out of each window
+         */
+        private void advance(long bucket) {
+            long steps = newestBucket < 0 ? WEEK_BUCKETS : Math.min(bucket - newestBucket, WEEK_BUCKETS);
+            for (long i = steps - 1; i >= 0; i--) {
+                long entering = bucket - i;
+                // Each new bucket pushes one bucket out of the 24h window and reuses the slot of the one leaving 7d
+                if (newestBucket >= 0) {
+                    expire(day, entering - DAY_BUCKETS);
+                    expire(week, entering - WEEK_BUCKETS);
+                }
+                int slot = slot(entering);
+                bucketCount[slot] = 0;
+                bucketSum[slot] = 0;
+            }
+            newestBucket = bucket;
+            if (steps == WEEK_BUCKETS) {
+                day.reset();
+                week.reset();
+            }
+        }
+        
+        private void expire(Window window, long bucket) {
+            if (bucket < 0 || bucket <= newestBucket - window.span) {
+                // Already outside the window
+                return;
+            }
+            int slot = slot(bucket);
+            if (bucketCount[slot] > 0) {
+                window.remove(bucketMin[slot], bucketMax[slot], bucketSum[slot], bucketCount[slot]);
+            }
+        }
+        
+        synchronized PriceRange range(boolean weekly, long price, long nowBucket) {
+            Window window = weekly ? week : day;
+            // Buckets only expire when a newer price is recorded, leave out those that have aged out since
+            long idle = Math.max(0, nowBucket - newestBucket);
+            if (idle == 0) {
+                if (window.count == 0) {
+                    return null;
+                }
+                if (window.extremesStale) {
+                    recomputeExtremes(window);
+                }
+                return new PriceRange(window.min, window.max, window.sum / window.count, window.count,
+                    percentile(window.span, window.count, price));
+            }
+            
+            int span = (int) Math.max(0, window.span - idle);
+            int min = Integer.MAX_VALUE;
+            int max = 0;
+            long sum = 0;
+            int count = 0;
+            for (int i = 0; i < span; i++) {
+                int slot = slot(newestBucket - i);
+                if (bucketCount[slot] > 0) {
+                    min = Math.min(min, bucketMin[slot]);
+                    max = Math.max(max, bucketMax[slot]);
+                    sum += bucketSum[slot];
+                    count += bucketCount[slot];
+                }
+            }
+            return count > 0 ? new PriceRange(min, max, sum / count, count, percentile(span, count, price)) : null;
+        }
+        
+        private void recomputeExtremes(Window window) {
+            int min = Integer.MAX_VALUE;
+            int max = 0;
+            for (int i = 0; i < window.span; i++) {
+                int slot = slot(newestBucket - i);
+                if (bucketCount[slot] > 0) {
+                    min = Math.min(min, bucketMin[slot]);
+                    max = Math.max(max, bucketMax[slot]);
+                }
+            }
+            window.min = min;
+            window.max = max;
+            window.extremesStale = false;
+        }
+        
+        /**
+         * Estimate the fraction of prices in the newest span buckets at or below a price, treating each
+         * bucket's prices as spread evenly between its min and max
+         */
+        private double percentile(int span, int total, long price) {
+            double below = 0;
+            for (int i = 0; i < span; i++) {
+                int slot = slot(newestBucket - i);
+                int count = bucketCount[slot];
+                if (count == 0) {
+                    continue;
+                }
+                if (price >= bucketMax[slot]) {
+                    below += count;
+                } else if (price >= bucketMin[slot]) {
+                    below += count * (double) (price - bucketMin[slot]) / (bucketMax[slot] - bucketMin[slot]);
+                }
+            }
+            return below / total;
+        }
+        
+        private static int slot(long bucket) {
+            return (int) (bucket % WEEK_BUCKETS);
+        }
+    }
+    
+    /**
+     * Running aggregates over the newest span buckets
+     */
+    private static final class Window {
+        private final int span;
+        private int min;
+        private int max;
+        private long sum;
+        private int count;
+        
+        // Set when an expired bucket held the min or max, so they need a rescan of this window's buckets
+        private boolean extremesStale;
+        
+        Window(int span) {
+            this.span = span;
+        }
+        
+        void add(int price) {
+            if (count == 0 || (!extremesStale && price < min)) {
+                min = price;
+            }
+            if (count == 0 || (!extremesStale && price > max)) {
+                max = price;
+            }
+            sum += price;
+            count++;
+        }
+        
+        void remove(int bucketMin, int bucketMax, long bucketSum, int bucketCount) {
+            sum -= bucketSum;
+            count -= bucketCount;
+            if (count == 0) {
+                extremesStale = false;
+            } else if (bucketMin <= min || bucketMax >= max) {
+                extremesStale = true;
+            }
+        }
+        
+        void reset() {
+            sum = 0;
+            count = 0;
+            extremesStale = false;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package com.sellnow;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dense price table indexed by item ID, backed by parallel primitive columns
+ * A table is filled by a single writer and then published; once published it is never modified,
+ * so readers always see a consistent price/all-time high pair without locking or allocating
+ */
+public final class PriceTable {
+    
+    static final PriceTable EMPTY = new PriceTable(0);
+    
+    private static final int MIN_CAPACITY = 32_768;
+    
+    private long[] currentPrice;
+    private long[] allTimeHigh;
+    private long[] allTimeHighTime;
+    private long[] lastUpdated;
+    private long[] highTime;
+    private long[] lowTime;
+    private long[] tradedTime;
+    // Bitmap of rows whose price is an estimate, which the next feed replaces whatever its trade times
+    private long[] estimated;
+    private int itemCount;
+    
+    private PriceTable(int capacity) {
+        this.currentPrice = new long[capacity];
+        this.allTimeHigh = new long[capacity];
+        this.allTimeHighTime = new long[capacity];
+        this.lastUpdated = new long[capacity];
+        this.highTime = new long[capacity];
+        this.lowTime = new long[capacity];
+        this.tradedTime = new long[capacity];
+        this.estimated = new long[(capacity + 63) >>> 6];
+    }
+    
+    private PriceTable(PriceTable source) {
+        this.currentPrice = source.currentPrice.clone();
+        this.allTimeHigh = source.allTimeHigh.clone();
+        this.allTimeHighTime = source.allTimeHighTime.clone();
+        this.lastUpdated = source.lastUpdated.clone();
+        this.highTime = source.highTime.clone();
+        this.lowTime = source.lowTime.clone();
+        this.tradedTime = source.tradedTime.clone();
+        this.estimated = source.estimated.clone();
+        this.itemCount = source.itemCount;
+    }
+    
+    /**
+     * Create an unpublished copy of this table for the writer to fill
+     */
+    PriceTable copy() {
+        if (currentPrice.length == 0) {
+            return new PriceTable(MIN_CAPACITY);
+        }
+        return new PriceTable(this);
+    }
+    
+    /**
+     * Record a new price for an item, raising the all-time high if needed
+     * Must only be called on a table that has not been published yet
+     * @return true if the price is a new all-time high
+     */
+    boolean updatePrice(int itemId, long price, long timestamp) {
+        if (itemId < 0) {
+            return false;
+        }
+        ensureCapacity(itemId + 1);
+        
+        if (currentPrice[itemId] <= 0) {
+            itemCount++;
+        }
+        currentPrice[itemId] = price;
+        lastUpdated[itemId] = timestamp;
+        
+        if (price > allTimeHigh[itemId]) {
+            allTimeHigh[itemId] = price;
+            allTimeHighTime[itemId] = timestamp;
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Record when the wiki last saw an instant-buy and instant-sell trade for an item, in epoch seconds
+     * Must only be called on a table that has not been published yet
+     */
+    void setTradeTimes(int itemId, long highTime, long lowTime) {
+        if (itemId < 0) {
+            return;
+        }
+        ensureCapacity(itemId + 1);
+        
+        this.highTime[itemId] = highTime;
+        this.lowTime[itemId] = lowTime;
+        estimated[itemId >>> 6] &= ~(1L << itemId);
+    }
+    
+    /**
+     * Record an estimated price, such as a guide price, leaving the all-time high and trade times alone
+     * Must only be called on a table that has not been published yet
+     */
+    void setEstimatedPrice(int itemId, long price, long timestamp) {
+        if (itemId < 0) {
+            return;
+        }
+        ensureCapacity(itemId + 1);
+        
+        if (currentPrice[itemId] <= 0) {
+            itemCount++;
+        }
+        currentPrice[itemId] = price;
+        lastUpdated[itemId] = timestamp;
+        estimated[itemId >>> 6] |= 1L << itemId;
+    }
+    
+    /**
+     * Record a price the player traded at on the Grand Exchange, ahead of the wiki seeing any trade
+     * Must only be called on a table that has not been published yet
+     * @param time When the trade happened, in epoch seconds
+     * @return true if the price is a new all-time high
+     */
+    boolean recordOwnTrade(int itemId, long price, long time) {
+        if (itemId < 0) {
+            return false;
+        }
+        ensureCapacity(itemId + 1);
+        
+        tradedTime[itemId] = time;
+        estimated[itemId >>> 6] &= ~(1L << itemId);
+        return updatePrice(itemId, price, TimeUnit.SECONDS.toMillis(time));
+    }
+    
+    /**
+     * Check if the trade times in the feed differ from the ones recorded for an item,
+     * meaning the wiki has seen a new trade since the last poll, or if the row holds an estimate to replace
+     */
+    boolean tradeTimesChanged(int itemId, long highTime, long lowTime) {
+        if (itemId < 0 || itemId >= this.highTime.length) {
+            return true;
+        }
+        return this.highTime[itemId] != highTime || this.lowTime[itemId] != lowTime
+            || (estimated[itemId >>> 6] & 1L << itemId) != 0;
+    }
+    
+    /**
+     * Raise an item's all-time high from historical data without touching its current price
+     * Must only be called on a table that has not been published yet
+     * @return true if the all-time high was raised
+     */
+    boolean raiseAllTimeHigh(int itemId, long high, long timestamp) {
+        if (itemId < 0) {
+            return false;
+        }
+        ensureCapacity(itemId + 1);
+        
+        if (high > allTimeHigh[itemId]) {
+            allTimeHigh[itemId] = high;
+            allTimeHighTime[itemId] = timestamp;
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Restore a persisted row without marking it as live
+     * Must only be called on a table that has not been published yet
+     */
+    void restore(int itemId, long price, long allTimeHigh, long allTimeHighTime) {
+        if (itemId < 0) {
+            return;
+        }
+        ensureCapacity(itemId + 1);
+        
+        if (currentPrice[itemId] <= 0 && price > 0) {
+            itemCount++;
+        }
+        this.currentPrice[itemId] = price;
+        this.allTimeHigh[itemId] = allTimeHigh;
+        this.allTimeHighTime[itemId] = allTimeHighTime;
+    }
+    
+    private void ensureCapacity(int capacity) {
+        if (capacity <= currentPrice.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, currentPrice.length + (currentPrice.length >> 1));
+        currentPrice = Arrays.copyOf(currentPrice, newCapacity);
+        allTimeHigh = Arrays.copyOf(allTimeHigh, newCapacity);
+        allTimeHighTime = Arrays.copyOf(allTimeHighTime, newCapacity);
+        lastUpdated = Arrays.copyOf(lastUpdated, newCapacity);
+        highTime = Arrays.copyOf(highTime, newCapacity);
+        lowTime = Arrays.copyOf(lowTime, newCapacity);
+        tradedTime = Arrays.copyOf(tradedTime, newCapacity);
+        estimated = Arrays.copyOf(estimated, (newCapacity + 63) >>> 6);
+    }
+    
+    /**
+     * Get when the wiki last saw an instant-buy trade, in epoch seconds
+     */
+    public long getHighTime(int itemId) {
+        return itemId >= 0 && itemId < highTime.length ? highTime[itemId] : 0;
+    }
+    
+    /**
+     * Get when the wiki last saw an instant-sell trade, in epoch seconds
+     */
+    public long getLowTime(int itemId) {
+        return itemId >= 0 && itemId < lowTime.length ? lowTime[itemId] : 0;
+    }
+    
+    /**
+     * Get when the player last traded the item on the Grand Exchange, in epoch seconds, or 0 if not this session
+     */
+    public long getTradedTime(int itemId) {
+        return itemId >= 0 && itemId < tradedTime.length ? tradedTime[itemId] : 0;
+    }
+    
+    /**
+     * Check if the table has a price for an item
+     */
+    public boolean hasPrice(int itemId) {
+        return getCurrentPrice(itemId) > 0;
+    }
+    
+    /**
+     * Get the capacity of the table, one more than the highest item ID it can hold
+     */
+    public int getCapacity() {
+        return currentPrice.length;
+    }
+    
+    public long getCurrentPrice(int itemId) {
+        return itemId >= 0 && itemId < currentPrice.length ? currentPrice[itemId] : 0;
+    }
+    
+    public long getAllTimeHigh(int itemId) {
+        return itemId >= 0 && itemId < allTimeHigh.length ? allTimeHigh[itemId] : 0;
+    }
+    
+    /**
+     * Get when the all-time high was reached, in epoch milliseconds
+     */
+    public long getAllTimeHighTime(int itemId) {
+        return itemId >= 0 && itemId < allTimeHighTime.length ? allTimeHighTime[itemId] : 0;
+    }
+    
+    /**
+     * Get when the price was last updated from a live source, in epoch milliseconds
+     * Rows restored from disk report 0 until the first poll
+     */
+    public long getLastUpdated(int itemId) {
+        return itemId >= 0 && itemId < lastUpdated.length ? lastUpdated[itemId] : 0;
+    }
+    
+    /**
+     * Check if an item is at its all-time high
+     * Returns true only if price has been set and equals the all-time high
+     */
+    public boolean isAtAllTimeHigh(int itemId) {
+        if (itemId < 0 || itemId >= currentPrice.length) {
+            return false;
+        }
+        long price = currentPrice[itemId];
+        long high = allTimeHigh[itemId];
+        return price > 0 && high > 0 && price >= high;
+    }
+    
+    /**
+     * Check if an item's price is within a percentage of its all-time high
+     * With a percentage of 0 this is the same as {@link #isAtAllTimeHigh(int)}
+     */
+    public boolean isNearAllTimeHigh(int itemId, int percent) {
+        if (itemId < 0 || itemId >= currentPrice.length) {
+            return false;
+        }
+        long price = currentPrice[itemId];
+        long high = allTimeHigh[itemId];
+        return price > 0 && high > 0 && price * 100 >= high * (100 - percent);
+    }
+    
+    /**
+     * Get the color tier of an item's current price
+     * @see ItemPriceData#getColorTier(long)
+     */
+    public int getColorTier(int itemId) {
+        return ItemPriceData.getColorTier(getCurrentPrice(itemId));
+    }
+    
+    /**
+     * Get the number of items with a price
+     */
+    public int getItemCount() {
+        return itemCount;
+    }
+}
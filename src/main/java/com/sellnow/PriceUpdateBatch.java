@@ -0,0 +1,98 @@
+package com.sellnow;
+
+import java.util.Arrays;
+
+/**
+ * Reusable, primitive buffer of per-item price updates
+ * A batch is filled by one thread (a parser or the backfill) and then applied to a {@link PriceTable}
+ * in one step, so it can be re-applied if another writer published a table in the meantime
+ */
+final class PriceUpdateBatch implements LatestPriceSink {
+    
+    private int[] itemIds;
+    private long[] high;
+    private long[] highTime;
+    private long[] low;
+    private long[] lowTime;
+    private int size;
+    private boolean estimates;
+    
+    PriceUpdateBatch(int initialCapacity) {
+        itemIds = new int[initialCapacity];
+        high = new long[initialCapacity];
+        highTime = new long[initialCapacity];
+        low = new long[initialCapacity];
+        lowTime = new long[initialCapacity];
+    }
+    
+    @Override
+    public void accept(int itemId, long high, long highTime, long low, long lowTime) {
+        if (size == itemIds.length) {
+            int newCapacity = Math.max(16, size + (size >> 1));
+            itemIds = Arrays.copyOf(itemIds, newCapacity);
+            this.high = Arrays.copyOf(this.high, newCapacity);
+            this.highTime = Arrays.copyOf(this.highTime, newCapacity);
+            this.low = Arrays.copyOf(this.low, newCapacity);
+            this.lowTime = Arrays.copyOf(this.lowTime, newCapacity);
+        }
+        
+        itemIds[size] = itemId;
+        this.high[size] = high;
+        this.highTime[size] = highTime;
+        this.low[size] = low;
+        this.lowTime[size] = lowTime;
+        size++;
+    }
+    
+    int size() {
+        return size;
+    }
+    
+    void clear() {
+        size = 0;
+        estimates = false;
+    }
+    
+    /**
+     * Mark the batch as estimated prices rather than trades, until it is cleared
+     * Estimates only update current prices, see {@link GEPriceService}
+     */
+    void setEstimates(boolean estimates) {
+        this.estimates = estimates;
+    }
+    
+    boolean isEstimates() {
+        return estimates;
+    }
+    
+    int getItemId(int index) {
+        return itemIds[index];
+    }
+    
+    long getHigh(int index) {
+        return high[index];
+    }
+    
+    long getHighTime(int index) {
+        return highTime[index];
+    }
+    
+    long getLow(int index) {
+        return low[index];
+    }
+    
+    long getLowTime(int index) {
+        return lowTime[index];
+    }
+    
+    /**
+     * Get the newest high or low trade time in the batch, in epoch seconds, or 0 if it is empty
+     */
+    long getNewestTradeTime() {
+        long newest = 0;
+        for (int i = 0; i < size; i++) {
+            newest = Math.max(newest, Math.max(highTime[i], lowTime[i]));
+        }
+        return newest;
+    }
+}
@@ -3,6 +3,8 @@ package com.sellnow;
 import net.runelite.client.config.Config;
 import net.runelite.client.config.ConfigGroup;
 import net.runelite.client.config.ConfigItem;
+import net.runelite.client.config.Range;
+import net.runelite.client.config.Units;
 
 import java.awt.Color;
 
@@ -39,6 +41,58 @@ public interface SellNowConfig extends Config {
         return 5;
     }
     
+    @ConfigItem(
+        keyName = "backfillHistory",
+        name = "Backfill Historical Highs",
+        description = "Fetch historical prices from the OSRS Wiki in the background so all-time highs include past highs, not just prices seen while the plugin was running",
+        position = 4
+    )
+    default boolean backfillHistory() {
+        return true;
+    }
+    
+    @ConfigItem(
+        keyName = "nearAllTimeHighPercent",
+        name = "Near All-Time High",
+        description = "Also highlight items within this percentage of their all-time high, 0 highlights only items at their high",
+        position = 5
+    )
+    @Range(max = 50)
+    @Units(Units.PERCENT)
+    default int nearAllTimeHighPercent() {
+        return 0;
+    }
+    
+    @ConfigItem(
+        keyName = "showPortfolio",
+        name = "Show Sellable Value",
+        description = "Show an info box with the total value of inventory and bank items at or near their all-time high",
+        position = 6
+    )
+    default boolean showPortfolio() {
+        return true;
+    }
+    
+    @ConfigItem(
+        keyName = "useOwnTrades",
+        name = "Use Own GE Trades",
+        description = "Update an item's price as soon as one of your Grand Exchange offers trades it, instead of waiting for the next price update",
+        position = 7
+    )
+    default boolean useOwnTrades() {
+        return true;
+    }
+    
+    @ConfigItem(
+        keyName = "notifyAllTimeHighs",
+        name = "Notify at All-Time High",
+        description = "Send a notification when items you hold reach their all-time high, at most one message per price update and one per item per hour",
+        position = 8
+    )
+    default boolean notifyAllTimeHighs() {
+        return true;
+    }
+    
     @ConfigItem(
         keyName = "colorGray",
         name = "Color: < 10k",
@@ -118,4 +172,24 @@ public interface SellNowConfig extends Config {
     default int highlightThickness() {
         return 2;
     }
+    
+    @ConfigItem(
+        keyName = "sharePrices",
+        name = "Share Prices Between Clients",
+        description = "Let one RuneLite client on this computer fetch prices and share them with the others, instead of every client fetching its own",
+        position = 25
+    )
+    default boolean sharePrices() {
+        return false;
+    }
+    
+    @ConfigItem(
+        keyName = "showDebugMetrics",
+        name = "Show Debug Metrics",
+        description = "Show an overlay panel with poll, parse and render timings, for checking whether the plugin is causing stutter",
+        position = 30
+    )
+    default boolean showDebugMetrics() {
+        return false;
+    }
 }
@@ -0,0 +1,117 @@
+package com.sellnow;
+
+import net.runelite.client.ui.overlay.OverlayPanel;
+import net.runelite.client.ui.overlay.OverlayPosition;
+import net.runelite.client.ui.overlay.components.LineComponent;
+import net.runelite.client.ui.overlay.components.TitleComponent;
+
+import javax.inject.Inject;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Debug panel showing poll, parse and render metrics
+ * Only added to the overlay manager while the Show Debug Metrics option is on
+ */
+public class SellNowDebugOverlay extends OverlayPanel {
+    
+    private final SellNowMetrics metrics;
+    private final GEPriceService priceService;
+    private final SharedPriceCache sharedCache;
+    
+    @Inject
+    public SellNowDebugOverlay(SellNowMetrics metrics, GEPriceService priceService, SharedPriceCache sharedCache) {
+        this.metrics = metrics;
+        this.priceService = priceService;
+        this.sharedCache = sharedCache;
+        setPosition(OverlayPosition.TOP_LEFT);
+    }
+    
+    @Override
+    public Dimension render(Graphics2D graphics) {
+        panelComponent.getChildren().add(TitleComponent.builder()
+            .text("Sell Now")
+            .build());
+        
+        addLine("Polls", metrics.getPollCount(SellNowMetrics.PollOutcome.UPDATED) + " / "
+            + metrics.getPollCount(SellNowMetrics.PollOutcome.UNCHANGED) + " / "
+            + metrics.getPollCount(SellNowMetrics.PollOutcome.NOT_MODIFIED));
+        addLine("Failed polls", Long.toString(metrics.getPollCount(SellNowMetrics.PollOutcome.FAILED)));
+        addLine("Last poll", describeLastPoll());
+        addSourceLine(priceService.getPrimaryHealth());
+        addSourceLine(priceService.getFallbackHealth());
+        if (sharedCache.isEnabled()) {
+            addLine("Shared cache", (sharedCache.isLeader() ? "leader" : "follower") + ", v" + sharedCache.getVersion());
+        }
+        addLine("Received", formatBytes(metrics.getBytesReceived()));
+        addLine("Fetch", formatLatency(metrics.getFetchLatency()));
+        addLine("Parse", formatLatency(metrics.getParseTime()));
+        addLine("Render", formatLatency(metrics.getRenderTime()));
+        addLine("Tracked items", Integer.toString(priceService.getTrackedItemCount()));
+        addLine("Item names", Integer.toString(priceService.getItemNameCount()));
+        
+        return super.render(graphics);
+    }
+    
+    private void addLine(String left, String right) {
+        panelComponent.getChildren().add(LineComponent.builder()
+            .left(left)
+            .right(right)
+            .build());
+    }
+    
+    /**
+     * Show a source as its state and average latency, with successes / failures
+     */
+    private void addSourceLine(SourceHealth health) {
+        if (health == null) {
+            return;
+        }
+        String state = health.isHealthy() ? "ok" : "down";
+        if (health.getSuccesses() > 0) {
+            state += " " + formatNanos(health.getAverageLatencyNanos());
+        }
+        addLine(health.getName(), state + ", " + health.getSuccesses() + " / " + health.getFailures());
+    }
+    
+    private String describeLastPoll() {
+        SellNowMetrics.PollOutcome outcome = metrics.getLastOutcome();
+        if (outcome == null) {
+            return "-";
+        }
+        long ago = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - metrics.getLastPollTime());
+        String source = metrics.getLastSource() != null ? metrics.getLastSource() + ", " : "";
+        if (outcome == SellNowMetrics.PollOutcome.UPDATED) {
+            return source + metrics.getLastItemsChanged() + " items, " + formatBytes(metrics.getLastBytes()) + ", "
+                + ago + "s ago";
+        }
+        return source + outcome.name().toLowerCase().replace('_', ' ') + ", " + ago + "s ago";
+    }
+    
+    /**
+     * Format a histogram as p50 / p99 / max
+     */
+    private static String formatLatency(LatencyHistogram histogram) {
+        if (histogram.getCount() == 0) {
+            return "-";
+        }
+        return formatNanos(histogram.getPercentileNanos(0.5)) + " / "
+            + formatNanos(histogram.getPercentileNanos(0.99)) + " / "
+            + formatNanos(histogram.getMaxNanos());
+    }
+    
+    private static String formatNanos(long nanos) {
+        if (nanos < 1_000_000) {
+            return (nanos / 1000) + "us";
+        }
+        return String.format("%.1fms", nanos / 1_000_000.0);
+    }
+    
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024 * 1024) {
+            return (bytes / 1024) + " KB";
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+}
@@ -0,0 +1,212 @@
+package com.sellnow;
+
+import jdk.jfr.EventType;
+
+import javax.inject.Singleton;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms for price polls and overlay frames
+ * Poll metrics are always recorded since they are cheap and infrequent; frame timing is only taken while
+ * the debug panel is shown or a JFR recording enables {@link OverlayFrameEvent}, and never allocates otherwise
+ */
+@Singleton
+public class SellNowMetrics {
+    
+    /**
+     * What a /latest poll ended with
+     */
+    public enum PollOutcome {
+        UPDATED,
+        UNCHANGED,
+        NOT_MODIFIED,
+        FAILED
+    }
+    
+    static final long NOT_TIMED = Long.MIN_VALUE;
+    
+    private static final EventType FRAME_EVENT_TYPE = EventType.getEventType(OverlayFrameEvent.class);
+    
+    private final LongAdder[] pollsByOutcome = new LongAdder[PollOutcome.values().length];
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder itemsChanged = new LongAdder();
+    private final LatencyHistogram fetchLatency = new LatencyHistogram();
+    private final LatencyHistogram parseTime = new LatencyHistogram();
+    private final LatencyHistogram renderTime = new LatencyHistogram();
+    
+    // The most recent poll, written by the price update thread
+    private volatile PollOutcome lastOutcome;
+    private volatile String lastSource;
+    private volatile int lastStatus;
+    private volatile long lastPollTime;
+    private volatile long lastFetchNanos;
+    private volatile long lastBytes;
+    private volatile long lastParseNanos;
+    private volatile int lastItemsChanged;
+    
+    private volatile boolean frameTimingEnabled;
+    
+    public SellNowMetrics() {
+        for (int i = 0; i < pollsByOutcome.length; i++) {
+            pollsByOutcome[i] = new LongAdder();
+        }
+    }
+    
+    /**
+     * Reset the values kept for the poll that is starting
+     */
+    void pollStarted() {
+        lastFetchNanos = 0;
+        lastStatus = 0;
+        lastBytes = 0;
+        lastParseNanos = 0;
+        lastItemsChanged = 0;
+    }
+    
+    /**
+     * Record the time from the start of a request until its response headers arrived
+     */
+    void recordFetch(long fetchStart, int status) {
+        long nanos = System.nanoTime() - fetchStart;
+        lastFetchNanos = nanos;
+        lastStatus = status;
+        fetchLatency.record(nanos);
+    }
+    
+    /**
+     * Record a /latest body that was read
+     */
+    void recordBody(int bytes) {
+        bytesReceived.add(bytes);
+        lastBytes = bytes;
+    }
+    
+    void recordParse(long parseNanos) {
+        parseTime.record(parseNanos);
+        lastParseNanos = parseNanos;
+    }
+    
+    /**
+     * Record how many items an applied update changed
+     */
+    void recordApplied(int changed) {
+        itemsChanged.add(changed);
+        lastItemsChanged += changed;
+    }
+    
+    /**
+     * Count a finished poll and emit its JFR event
+     * @param source The source whose prices were applied last, or null if none were
+     */
+    void pollFinished(PollOutcome outcome, String source) {
+        pollsByOutcome[outcome.ordinal()].increment();
+        lastOutcome = outcome;
+        lastSource = source;
+        lastPollTime = System.currentTimeMillis();
+        
+        PricePollEvent event = new PricePollEvent();
+        if (event.shouldCommit()) {
+            event.outcome = outcome.name();
+            event.source = source;
+            event.status = lastStatus;
+            event.fetchTime = lastFetchNanos;
+            event.bytesReceived = lastBytes;
+            event.parseTime = lastParseNanos;
+            event.itemsChanged = lastItemsChanged;
+            event.commit();
+        }
+    }
+    
+    /**
+     * Enable frame timing for the debug panel
+     */
+    void setFrameTimingEnabled(boolean enabled) {
+        frameTimingEnabled = enabled;
+    }
+    
+    /**
+     * Start timing an overlay frame
+     * @return The start time to pass to {@link #frameFinished(long)}, or {@link #NOT_TIMED} if frames are not being timed
+     */
+    long frameStarted() {
+        return frameTimingEnabled || FRAME_EVENT_TYPE.isEnabled() ? System.nanoTime() : NOT_TIMED;
+    }
+    
+    void frameFinished(long frameStart) {
+        if (frameStart == NOT_TIMED) {
+            return;
+        }
+        long nanos = System.nanoTime() - frameStart;
+        renderTime.record(nanos);
+        
+        if (FRAME_EVENT_TYPE.isEnabled()) {
+            OverlayFrameEvent event = new OverlayFrameEvent();
+            event.renderTime = nanos;
+            event.commit();
+        }
+    }
+    
+    public long getPollCount(PollOutcome outcome) {
+        return pollsByOutcome[outcome.ordinal()].sum();
+    }
+    
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+    
+    public long getItemsChanged() {
+        return itemsChanged.sum();
+    }
+    
+    public PollOutcome getLastOutcome() {
+        return lastOutcome;
+    }
+    
+    /**
+     * Get the source whose prices the last poll applied, or null
+     */
+    public String getLastSource() {
+        return lastSource;
+    }
+    
+    public long getLastPollTime() {
+        return lastPollTime;
+    }
+    
+    public long getLastBytes() {
+        return lastBytes;
+    }
+    
+    public int getLastItemsChanged() {
+        return lastItemsChanged;
+    }
+    
+    LatencyHistogram getFetchLatency() {
+        return fetchLatency;
+    }
+    
+    LatencyHistogram getParseTime() {
+        return parseTime;
+    }
+    
+    LatencyHistogram getRenderTime() {
+        return renderTime;
+    }
+    
+    /**
+     * Clear all counters and histograms
+     */
+    public void reset() {
+        for (LongAdder polls : pollsByOutcome) {
+            polls.reset();
+        }
+        bytesReceived.reset();
+        itemsChanged.reset();
+        fetchLatency.reset();
+        parseTime.reset();
+        renderTime.reset();
+        lastOutcome = null;
+        lastSource = null;
+        lastPollTime = 0;
+    }
+}
@@ -2,7 +2,6 @@ package com.sellnow;
 
 import net.runelite.api.Client;
 import net.runelite.api.widgets.Widget;
-import net.runelite.api.widgets.WidgetItem;
 import net.runelite.client.ui.overlay.Overlay;
 import net.runelite.client.ui.overlay.OverlayLayer;
 import net.runelite.client.ui.overlay.OverlayPosition;
@@ -13,13 +12,15 @@ import javax.inject.Inject;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics2D;
-import java.awt.Rectangle;
 import java.awt.BasicStroke;
+import java.awt.geom.Path2D;
 import java.text.NumberFormat;
 import java.util.Locale;
 
 /**
  * Overlay to highlight items at their all-time high prices
+ * Highlight tiers come precomputed from the {@link HighlightIndex}, so a frame only walks the visible
+ * item widgets, collects their outlines into one shape per tier and draws each tier once
  */
 public class SellNowOverlay extends Overlay {
     
@@ -27,114 +28,182 @@ public class SellNowOverlay extends Overlay {
     private final SellNowConfig config;
     private final GEPriceService priceService;
     private final TooltipManager tooltipManager;
+    private final HighlightIndex highlightIndex;
+    private final SellNowMetrics metrics;
     private final NumberFormat numberFormat;
     
+    // Tooltip for the last hovered item, rebuilt when the item or the price table changes,
+    // or while the item's name is still unknown
+    private int tooltipItemId = -1;
+    private PriceTable tooltipPrices;
+    private boolean tooltipNamed;
+    private Tooltip tooltip;
+    
+    // Item under the mouse this frame, or -1
+    private int hoveredItemId;
+    
+    // Settings read from the config, rebuilt only when the sellnow config group changes
+    private volatile boolean settingsDirty = true;
+    private boolean highlightEnabled;
+    private boolean showTooltip;
+    private int nearAllTimeHighPercent;
+    private BasicStroke highlightStroke;
+    private final Color[] tierColors = new Color[ItemPriceData.TIER_COUNT];
+    
+    // Outlines collected this frame, one shape per tier, reset and reused every frame
+    private final Path2D.Float[] tierOutlines = new Path2D.Float[ItemPriceData.TIER_COUNT];
+    private final boolean[] tierUsed = new boolean[ItemPriceData.TIER_COUNT];
+    
     @Inject
     public SellNowOverlay(Client client, SellNowConfig config, GEPriceService priceService,
-                          TooltipManager tooltipManager) {
+                          TooltipManager tooltipManager, HighlightIndex highlightIndex, SellNowMetrics metrics) {
         this.client = client;
         this.config = config;
         this.priceService = priceService;
         this.tooltipManager = tooltipManager;
+        this.highlightIndex = highlightIndex;
+        this.metrics = metrics;
         this.numberFormat = NumberFormat.getInstance(Locale.US);
         
+        for (int tier = 0; tier < tierOutlines.length; tier++) {
+            tierOutlines[tier] = new Path2D.Float();
+        }
+        
         setPosition(OverlayPosition.DYNAMIC);
         setLayer(OverlayLayer.ABOVE_WIDGETS);
     }
     
+    /**
+     * Re-read colors, thickness and toggles from the config on the next frame
+     */
+    void invalidateSettings() {
+        settingsDirty = true;
+    }
+    
+    private void loadSettings() {
+        settingsDirty = false;
+        highlightEnabled = config.highlightEnabled();
+        showTooltip = config.showTooltip();
+        nearAllTimeHighPercent = Math.max(0, Math.min(config.nearAllTimeHighPercent(), 50));
+        highlightStroke = new BasicStroke(config.highlightThickness());
+        for (int tier = 0; tier < tierColors.length; tier++) {
+            tierColors[tier] = getColorForTier(tier);
+        }
+    }
+    
     @Override
     public Dimension render(Graphics2D graphics) {
-        if (!config.highlightEnabled()) {
-            return null;
+        long frameStart = metrics.frameStarted();
+        renderHighlights(graphics);
+        metrics.frameFinished(frameStart);
+        return null;
+    }
+    
+    private void renderHighlights(Graphics2D graphics) {
+        if (settingsDirty) {
+            loadSettings();
+        }
+        if (!highlightEnabled) {
+            return;
+        }
+        
+        // Read the price table once so every item this frame is checked against the same snapshot
+        PriceTable prices = highlightIndex.refresh(priceService, nearAllTimeHighPercent);
+        
+        net.runelite.api.Point mousePos = showTooltip ? client.getMouseCanvasPosition() : null;
+        hoveredItemId = -1;
+        for (int tier = 0; tier < tierOutlines.length; tier++) {
+            tierOutlines[tier].reset();
+            tierUsed[tier] = false;
         }
         
         // Check inventory items
-        renderInventoryHighlights(graphics);
+        collectOutlines(client.getWidget(149, 0), highlightIndex.getInventory(), mousePos);
         
         // Check bank items
-        renderBankHighlights(graphics);
+        collectOutlines(client.getWidget(12, 12), highlightIndex.getBank(), mousePos);
         
-        // Check Grand Exchange interface
-        renderGEHighlights(graphics);
+        // Check Grand Exchange interface, which shows the inventory
+        collectOutlines(client.getWidget(465, 7), highlightIndex.getInventory(), mousePos);
         
-        return null;
-    }
-    
-    /**
-     * Render highlights for inventory items
-     */
-    private void renderInventoryHighlights(Graphics2D graphics) {
-        Widget inventoryWidget = client.getWidget(149, 0); // Inventory widget
-        if (inventoryWidget != null && !inventoryWidget.isHidden()) {
-            for (WidgetItem item : inventoryWidget.getWidgetItems()) {
-                renderItemHighlight(graphics, item);
+        // One draw call per tier that has anything to highlight
+        graphics.setStroke(highlightStroke);
+        for (int tier = 0; tier < tierOutlines.length; tier++) {
+            if (tierUsed[tier]) {
+                graphics.setColor(tierColors[tier]);
+                graphics.draw(tierOutlines[tier]);
             }
         }
-    }
-    
-    /**
-     * Render highlights for bank items
-     */
-    private void renderBankHighlights(Graphics2D graphics) {
-        Widget bankWidget = client.getWidget(12, 12); // Bank item container
-        if (bankWidget != null && !bankWidget.isHidden()) {
-            for (WidgetItem item : bankWidget.getWidgetItems()) {
-                renderItemHighlight(graphics, item);
-            }
+        
+        if (hoveredItemId != -1) {
+            showPriceTooltip(hoveredItemId, prices);
         }
     }
     
     /**
-     * Render highlights for Grand Exchange items
+     * Collect highlight outlines for the item widgets of one container
      */
-    private void renderGEHighlights(Graphics2D graphics) {
-        // GE inventory widget
-        Widget geInventoryWidget = client.getWidget(465, 7);
-        if (geInventoryWidget != null && !geInventoryWidget.isHidden()) {
-            for (WidgetItem item : geInventoryWidget.getWidgetItems()) {
-                renderItemHighlight(graphics, item);
-            }
+    private void collectOutlines(Widget containerWidget, HighlightIndex.Slots slots,
+                                 net.runelite.api.Point mousePos) {
+        if (containerWidget == null || containerWidget.isHidden()) {
+            return;
         }
-    }
-    
-    /**
-     * Render a highlight around a specific item
-     */
-    private void renderItemHighlight(Graphics2D graphics, WidgetItem item) {
-        int itemId = item.getId();
         
-        // Check if item is at all-time high
-        ItemPriceData priceData = priceService.getItemPriceData(itemId);
-        if (priceData == null || !priceData.isAtAllTimeHigh()) {
+        Widget[] children = containerWidget.getDynamicChildren();
+        net.runelite.api.Point origin = containerWidget.getCanvasLocation();
+        if (children == null || origin == null) {
             return;
         }
         
-        // Get the color based on price tier
-        Color highlightColor = getColorForTier(priceData.getColorTier());
+        // Item widgets are positioned relative to their (possibly scrolled) container
+        int minX = origin.getX();
+        int minY = origin.getY();
+        int maxX = minX + containerWidget.getWidth();
+        int maxY = minY + containerWidget.getHeight();
+        int offsetX = minX - containerWidget.getScrollX();
+        int offsetY = minY - containerWidget.getScrollY();
         
-        // Draw the highlight
-        Rectangle bounds = item.getCanvasBounds();
-        if (bounds != null) {
-            graphics.setColor(highlightColor);
-            graphics.setStroke(new BasicStroke(config.highlightThickness()));
-            graphics.drawRect(bounds.x, bounds.y, bounds.width, bounds.height);
+        for (Widget child : children) {
+            if (child == null || child.isHidden()) {
+                continue;
+            }
+            
+            int slot = child.getIndex();
+            int tier = slots.getTier(slot, child.getItemId());
+            if (tier == HighlightIndex.NO_HIGHLIGHT) {
+                continue;
+            }
+            
+            int x = offsetX + child.getRelativeX();
+            int y = offsetY + child.getRelativeY();
+            int width = child.getWidth();
+            int height = child.getHeight();
             
-            // Add tooltip if enabled and mouse is hovering
-            if (config.showTooltip()) {
-                net.runelite.api.Point mousePos = client.getMouseCanvasPosition();
-                if (mousePos != null) {
-                    int mouseX = mousePos.getX();
-                    int mouseY = mousePos.getY();
-                    if (bounds.contains(mouseX, mouseY)) {
-                        showPriceTooltip(priceData);
-                    }
+            // Skip items scrolled out of view
+            if (x + width <= minX || x >= maxX || y + height <= minY || y >= maxY) {
+                continue;
+            }
+            
+            Path2D.Float outline = tierOutlines[tier];
+            outline.moveTo(x, y);
+            outline.lineTo(x + width, y);
+            outline.lineTo(x + width, y + height);
+            outline.lineTo(x, y + height);
+            outline.closePath();
+            tierUsed[tier] = true;
+            
+            if (mousePos != null) {
+                int mouseX = mousePos.getX();
+                int mouseY = mousePos.getY();
+                if (mouseX >= x && mouseX < x + width && mouseY >= y && mouseY < y + height) {
+                    hoveredItemId = slots.getCanonicalItemId(slot);
                 }
             }
         }
     }
     
     /**
-     * Get the color for a specific price tier
+     * Get the color for a specific price tier from the config
      */
     private Color getColorForTier(int tier) {
         switch (tier) {
@@ -159,19 +228,59 @@ public class SellNowOverlay extends Overlay {
     
     /**
      * Show a tooltip with price information
+     * The tooltip is cached and only rebuilt when the hovered item or its prices change
      */
-    private void showPriceTooltip(ItemPriceData priceData) {
-        StringBuilder tooltipText = new StringBuilder();
-        tooltipText.append(priceData.getItemName())
-            .append("<br/>")
-            .append("Current: ")
-            .append(numberFormat.format(priceData.getCurrentPrice()))
-            .append(" gp<br/>")
-            .append("All-Time High: ")
-            .append(numberFormat.format(priceData.getAllTimeHigh()))
-            .append(" gp<br/>")
-            .append("<col=00ff00>AT ALL-TIME HIGH!</col>");
+    private void showPriceTooltip(int itemId, PriceTable prices) {
+        if (tooltip == null || itemId != tooltipItemId || prices != tooltipPrices || !tooltipNamed) {
+            ItemPriceData priceData = priceService.getItemPriceData(itemId);
+            if (priceData == null) {
+                return;
+            }
+            
+            String itemName = priceService.getItemName(itemId);
+            StringBuilder tooltipText = new StringBuilder();
+            tooltipText.append(itemName != null ? itemName : "Unknown Item")
+                .append("<br/>")
+                .append("Current: ")
+                .append(numberFormat.format(priceData.getCurrentPrice()))
+                .append(" gp<br/>")
+                .append("All-Time High: ")
+                .append(numberFormat.format(priceData.getAllTimeHigh()))
+                .append(" gp<br/>");
+            appendRange(tooltipText, "24h", priceService.getDayRange(itemId));
+            appendRange(tooltipText, "7d", priceService.getWeekRange(itemId));
+            appendRange(tooltipText, "30d", priceService.getMonthRange(itemId));
+            appendRange(tooltipText, "1y", priceService.getYearRange(itemId));
+            if (priceData.isAtAllTimeHigh()) {
+                tooltipText.append("<col=00ff00>AT ALL-TIME HIGH!</col>");
+            } else if (priceData.getAllTimeHigh() > 0) {
+                long below = 100 - priceData.getCurrentPrice() * 100 / priceData.getAllTimeHigh();
+                tooltipText.append("<col=ffff00>").append(below).append("% below all-time high</col>");
+            }
+            
+            tooltip = new Tooltip(tooltipText.toString());
+            tooltipItemId = itemId;
+            tooltipPrices = prices;
+            tooltipNamed = itemName != null;
+        }
         
-        tooltipManager.add(new Tooltip(tooltipText.toString()));
+        tooltipManager.add(tooltip);
+    }
+    
+    /**
+     * Append a rolling range line, e.g. "7d: 1,000 - 1,200 gp (p80)"
+     */
+    private void appendRange(StringBuilder tooltipText, String label, PriceRange range) {
+        if (range == null) {
+            return;
+        }
+        tooltipText.append(label)
+            .append(": ")
+            .append(numberFormat.format(range.getLow()))
+            .append(" - ")
+            .append(numberFormat.format(range.getHigh()))
+            .append(" gp (p")
+            .append(Math.round(range.getPercentile() * 100))
+            .append(")<br/>");
     }
 }
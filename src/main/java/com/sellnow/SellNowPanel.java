@@ -0,0 +1,276 @@
+package com.sellnow;
+
+import net.runelite.client.ui.ColorScheme;
+import net.runelite.client.ui.PluginPanel;
+
+import javax.swing.BoxLayout;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.UIManager;
+import javax.swing.border.EmptyBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.GridLayout;
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
+import java.text.NumberFormat;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Side panel to search items by name and pin them to the {@link Watchlist} with an alert price
+ * The search runs against the {@link ItemNameIndex} on every keystroke
+ */
+class SellNowPanel extends PluginPanel {
+    
+    private static final int MAX_RESULTS = 10;
+    private static final Color AT_HIGH_COLOR = new Color(0, 200, 83);
+    
+    private final GEPriceService priceService;
+    private final Watchlist watchlist;
+    private final NumberFormat numberFormat = NumberFormat.getInstance(Locale.US);
+    private final JTextField searchField = new JTextField();
+    private final JButton refreshButton = new JButton("Refresh");
+    private final JPanel resultsPanel = new JPanel(new GridLayout(0, 1, 0, 2));
+    private final JPanel watchlistPanel = new JPanel(new GridLayout(0, 1, 0, 2));
+    // The watchlist's rows as last built, kept so new prices update their labels without replacing the rows
+    private int[] shownItems = new int[0];
+    private final Map<Integer, JLabel> watchlistLabels = new HashMap<>();
+    
+    SellNowPanel(GEPriceService priceService, Watchlist watchlist) {
+        this.priceService = priceService;
+        this.watchlist = watchlist;
+        
+        setLayout(new BorderLayout(0, 6));
+        setBorder(new EmptyBorder(8, 8, 8, 8));
+        
+        searchField.setToolTipText("Search items by name");
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                updateResults();
+            }
+            
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                updateResults();
+            }
+            
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                updateResults();
+            }
+        });
+        
+        refreshButton.setToolTipText("Fetch new prices now");
+        refreshButton.addActionListener(e -> refreshPrices());
+        JPanel header = new JPanel(new BorderLayout(4, 0));
+        header.setOpaque(false);
+        header.add(searchField, BorderLayout.CENTER);
+        header.add(refreshButton, BorderLayout.EAST);
+        
+        JLabel watchlistTitle = new JLabel("Watchlist");
+        watchlistTitle.setForeground(Color.WHITE);
+        watchlistTitle.setBorder(new EmptyBorder(8, 0, 4, 0));
+        
+        JPanel content = new JPanel();
+        content.setLayout(new BoxLayout(content, BoxLayout.Y_AXIS));
+        content.add(resultsPanel);
+        content.add(watchlistTitle);
+        content.add(watchlistPanel);
+        
+        add(header, BorderLayout.NORTH);
+        add(content, BorderLayout.CENTER);
+        rebuildWatchlist();
+    }
+    
+    @Override
+    public void onActivate() {
+        // Names or prices may have loaded while the panel was hidden
+        updateResults();
+        updateWatchlist();
+    }
+    
+    /**
+     * Show new prices for the watchlist, callable from any thread
+     */
+    void refresh() {
+        SwingUtilities.invokeLater(this::updateWatchlist);
+    }
+    
+    /**
+     * Ask for new prices, the button staying disabled until the shared poll finishes
+     */
+    private void refreshPrices() {
+        refreshButton.setEnabled(false);
+        priceService.refreshPrices().thenAccept(outcome -> SwingUtilities.invokeLater(() -> {
+            refreshButton.setEnabled(true);
+            refreshButton.setToolTipText(outcome == SellNowMetrics.PollOutcome.UPDATED ? "Prices updated"
+                : outcome == SellNowMetrics.PollOutcome.FAILED ? "Prices could not be fetched, try again later"
+                : "No new prices published yet");
+            updateResults();
+            updateWatchlist();
+        }));
+    }
+    
+    private void updateResults() {
+        resultsPanel.removeAll();
+        ItemNameIndex names = priceService.getItemNames();
+        PriceTable prices = priceService.getPriceTable();
+        for (int itemId : names.search(searchField.getText(), MAX_RESULTS)) {
+            resultsPanel.add(resultRow(itemId, names.getName(itemId), prices));
+        }
+        resultsPanel.revalidate();
+        resultsPanel.repaint();
+    }
+    
+    private JPanel resultRow(int itemId, String name, PriceTable prices) {
+        JLabel label = new JLabel(name);
+        label.setToolTipText(formatPrice(prices.getCurrentPrice(itemId)));
+        
+        JButton pin = new JButton("+");
+        pin.setToolTipText("Pin to the watchlist");
+        pin.setEnabled(!watchlist.contains(itemId));
+        pin.addActionListener(e -> {
+            if (watchlist.pin(itemId)) {
+                pin.setEnabled(false);
+                rebuildWatchlist();
+            }
+        });
+        
+        return row(label, pin);
+    }
+    
+    /**
+     * Update the rows' labels in place, so an alert price being typed is kept, rebuilding only if the watchlist
+     * changed
+     */
+    private void updateWatchlist() {
+        if (!Arrays.equals(watchlist.getItems(), shownItems)) {
+            rebuildWatchlist();
+            return;
+        }
+        PriceTable prices = priceService.getPriceTable();
+        for (Map.Entry<Integer, JLabel> entry : watchlistLabels.entrySet()) {
+            updateLabel(entry.getValue(), entry.getKey(), prices);
+        }
+    }
+    
+    private void rebuildWatchlist() {
+        watchlistPanel.removeAll();
+        watchlistLabels.clear();
+        PriceTable prices = priceService.getPriceTable();
+        int[] items = watchlist.getItems();
+        shownItems = items;
+        for (int itemId : items) {
+            watchlistPanel.add(watchlistRow(itemId, prices));
+        }
+        if (items.length == 0) {
+            JLabel empty = new JLabel("Search for an item and press + to pin it");
+            empty.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
+            watchlistPanel.add(empty);
+        }
+        watchlistPanel.revalidate();
+        watchlistPanel.repaint();
+    }
+    
+    private JPanel watchlistRow(int itemId, PriceTable prices) {
+        JLabel label = new JLabel();
+        updateLabel(label, itemId, prices);
+        watchlistLabels.put(itemId, label);
+        
+        long alertPrice = watchlist.getAlertPrice(itemId);
+        JTextField alert = new JTextField(alertPrice > 0 ? numberFormat.format(alertPrice) : "", 6);
+        alert.setToolTipText("Alert price, such as 25k or 1.5m; leave empty to alert at the all-time high");
+        alert.addActionListener(e -> applyAlertPrice(itemId, alert));
+        alert.addFocusListener(new FocusAdapter() {
+            @Override
+            public void focusLost(FocusEvent e) {
+                applyAlertPrice(itemId, alert);
+            }
+        });
+        
+        JButton remove = new JButton("x");
+        remove.setToolTipText("Remove from the watchlist");
+        remove.addActionListener(e -> {
+            watchlist.unpin(itemId);
+            rebuildWatchlist();
+            updateResults();
+        });
+        
+        JPanel controls = new JPanel(new BorderLayout(2, 0));
+        controls.setOpaque(false);
+        controls.add(alert, BorderLayout.CENTER);
+        controls.add(remove, BorderLayout.EAST);
+        return row(label, controls);
+    }
+    
+    private void updateLabel(JLabel label, int itemId, PriceTable prices) {
+        String name = priceService.getItemName(itemId);
+        label.setText("<html>" + escapeHtml(name != null ? name : "Item " + itemId) + "<br>"
+            + formatPrice(prices.getCurrentPrice(itemId)) + " / ATH " + formatPrice(prices.getAllTimeHigh(itemId))
+            + "</html>");
+        label.setForeground(prices.isAtAllTimeHigh(itemId) ? AT_HIGH_COLOR : UIManager.getColor("Label.foreground"));
+    }
+    
+    private void applyAlertPrice(int itemId, JTextField field) {
+        long alertPrice = parsePrice(field.getText());
+        if (alertPrice < 0) {
+            field.setText("");
+            alertPrice = 0;
+        }
+        watchlist.setAlertPrice(itemId, alertPrice);
+    }
+    
+    private static JPanel row(JLabel label, Component control) {
+        JPanel row = new JPanel(new BorderLayout(4, 0));
+        row.setBackground(ColorScheme.DARKER_GRAY_COLOR);
+        row.setBorder(new EmptyBorder(4, 6, 4, 6));
+        row.add(label, BorderLayout.CENTER);
+        row.add(control, BorderLayout.EAST);
+        return row;
+    }
+    
+    /**
+     * Escape text for an html label, so a name containing markup is shown as written
+     */
+    private static String escapeHtml(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+    
+    private String formatPrice(long price) {
+        return price > 0 ? numberFormat.format(price) + " gp" : "-";
+    }
+    
+    /**
+     * Parse a price such as 25000, 25,000, 25k, 1.5m or 2b
+     * @return The price, 0 for empty text, or -1 if the text is not a price
+     */
+    static long parsePrice(String text) {
+        String price = text.trim().replace(",", "").toLowerCase(Locale.ROOT);
+        if (price.isEmpty()) {
+            return 0;
+        }
+        
+        long multiplier = 1;
+        char suffix = price.charAt(price.length() - 1);
+        if (suffix == 'k' || suffix == 'm' || suffix == 'b') {
+            multiplier = suffix == 'k' ? 1_000L : suffix == 'm' ? 1_000_000L : 1_000_000_000L;
+            price = price.substring(0, price.length() - 1);
+        }
+        try {
+            double value = Double.parseDouble(price) * multiplier;
+            return value >= 0 && value <= Long.MAX_VALUE ? (long) value : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -4,16 +4,33 @@ import com.google.inject.Provides;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.Client;
 import net.runelite.api.GameState;
+import net.runelite.api.GrandExchangeOffer;
+import net.runelite.api.InventoryID;
+import net.runelite.api.Item;
+import net.runelite.api.ItemID;
+import net.runelite.api.ItemContainer;
 import net.runelite.api.events.GameStateChanged;
+import net.runelite.api.events.GrandExchangeOfferChanged;
+import net.runelite.api.events.ItemContainerChanged;
+import net.runelite.client.callback.ClientThread;
 import net.runelite.client.config.ConfigManager;
 import net.runelite.client.eventbus.Subscribe;
+import net.runelite.client.events.ConfigChanged;
+import net.runelite.client.game.ItemManager;
 import net.runelite.client.plugins.Plugin;
 import net.runelite.client.plugins.PluginDescriptor;
+import net.runelite.client.ui.ClientToolbar;
+import net.runelite.client.ui.NavigationButton;
 import net.runelite.client.ui.overlay.OverlayManager;
+import net.runelite.client.ui.overlay.infobox.InfoBoxManager;
 
 import javax.inject.Inject;
-import javax.inject.Named;
-import java.util.concurrent.ScheduledExecutorService;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
 
 /**
  * RuneLite plugin to highlight items at their all-time high Grand Exchange prices
@@ -42,8 +59,53 @@ public class SellNowPlugin extends Plugin {
     private GEPriceService priceService;
     
     @Inject
-    @Named("runelite")
-    private ScheduledExecutorService executorService;
+    private AthBackfillService backfillService;
+    
+    @Inject
+    private ItemManager itemManager;
+    
+    @Inject
+    private ClientThread clientThread;
+    
+    @Inject
+    private ItemManagerPriceSource itemManagerPriceSource;
+    
+    @Inject
+    private HighlightIndex highlightIndex;
+    
+    @Inject
+    private InterestSet interestSet;
+    
+    @Inject
+    private Portfolio portfolio;
+    
+    @Inject
+    private InfoBoxManager infoBoxManager;
+    
+    private PortfolioInfoBox portfolioInfoBox;
+    
+    @Inject
+    private SellNowMetrics metrics;
+    
+    @Inject
+    private SellNowDebugOverlay debugOverlay;
+    
+    @Inject
+    private SharedPriceCache sharedPriceCache;
+    
+    @Inject
+    private Watchlist watchlist;
+    
+    @Inject
+    private AthNotifier athNotifier;
+    
+    @Inject
+    private ClientToolbar clientToolbar;
+    
+    private final OfferTracker offerTracker = new OfferTracker();
+    
+    private SellNowPanel panel;
+    private NavigationButton navigationButton;
     
     @Override
     protected void startUp() throws Exception {
@@ -51,12 +113,49 @@ public class SellNowPlugin extends Plugin {
         
         // Add overlay
         overlayManager.add(overlay);
+        metrics.reset();
+        updateDebugOverlay();
         
-        // Load item name mapping
-        executorService.submit(() -> priceService.loadItemNameMapping());
+        // Index containers that were loaded before the plugin started
+        clientThread.invokeLater(() -> {
+            indexContainer(client.getItemContainer(InventoryID.INVENTORY));
+            indexContainer(client.getItemContainer(InventoryID.BANK));
+            // Ready for the fallback source should the first poll need it, later fetches refresh them
+            itemManagerPriceSource.refreshGuidePrices();
+        });
         
-        // Start price updates with configured interval
-        priceService.startPriceUpdates(executorService, config.updateIntervalMinutes());
+        // Offer updates seen before a restart may be stale, start every slot from its next update
+        offerTracker.reset();
+        
+        // Restore persisted all-time highs so highlights are correct before the first poll
+        priceService.loadPersistedHighs();
+        
+        // Price deltas only reach the index for held items, so rebuild it against the restored prices
+        highlightIndex.invalidate();
+        portfolio.setNearPercent(config.nearAllTimeHighPercent());
+        portfolioInfoBox = new PortfolioInfoBox(itemManager.getImage(ItemID.COINS_10000), this, portfolio, config);
+        updatePortfolioInfoBox();
+        
+        // Side panel for searching items and the watchlist
+        watchlist.load();
+        panel = new SellNowPanel(priceService, watchlist);
+        navigationButton = NavigationButton.builder()
+            .tooltip("Sell Now")
+            .icon(createPanelIcon())
+            .priority(7)
+            .panel(panel)
+            .build();
+        clientToolbar.addNavigation(navigationButton);
+        athNotifier.start(config.notifyAllTimeHighs());
+        
+        // Start price updates with configured interval, polling and loading item names in the background
+        sharedPriceCache.setEnabled(config.sharePrices());
+        priceService.startPriceUpdates(config.updateIntervalMinutes());
+        
+        // Seed historical highs in the background
+        if (config.backfillHistory()) {
+            backfillService.start();
+        }
         
         log.info("Price tracking started with {} minute update interval.", config.updateIntervalMinutes());
     }
@@ -67,12 +166,23 @@ public class SellNowPlugin extends Plugin {
         
         // Stop price updates
         priceService.stopPriceUpdates();
+        backfillService.stop();
         
-        // Remove overlay
+        // Remove overlays
         overlayManager.remove(overlay);
+        overlayManager.remove(debugOverlay);
+        metrics.setFrameTimingEnabled(false);
+        
+        athNotifier.stop();
+        clientToolbar.removeNavigation(navigationButton);
+        navigationButton = null;
+        panel = null;
         
         // Clear cache
+        infoBoxManager.removeInfoBox(portfolioInfoBox);
         priceService.clearCache();
+        interestSet.clear();
+        portfolio.clear();
     }
     
     @Subscribe
@@ -80,9 +190,156 @@ public class SellNowPlugin extends Plugin {
         if (gameStateChanged.getGameState() == GameState.LOGGED_IN) {
             log.debug("Player logged in, price data available for {} items", 
                 priceService.getTrackedItemCount());
+        } else if (gameStateChanged.getGameState() == GameState.LOGIN_SCREEN
+            || gameStateChanged.getGameState() == GameState.HOPPING) {
+            // Offers are replayed on the next login, those must only set each slot's baseline
+            offerTracker.reset();
         }
     }
     
+    @Subscribe
+    public void onGrandExchangeOfferChanged(GrandExchangeOfferChanged event) {
+        GrandExchangeOffer offer = event.getOffer();
+        long price = offerTracker.update(event.getSlot(), offer.getItemId(), offer.getQuantitySold(),
+            offer.getSpent());
+        if (price > 0 && config.useOwnTrades()) {
+            long now = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+            priceService.applyOwnTrade(itemManager.canonicalize(offer.getItemId()), price, now);
+        }
+    }
+    
+    @Subscribe
+    public void onItemContainerChanged(ItemContainerChanged event) {
+        indexContainer(event.getItemContainer());
+    }
+    
+    @Subscribe
+    public void onPriceDeltaEvent(PriceDeltaEvent event) {
+        // Posted from the price update thread, or on stop for queued highs; every consumer is thread safe
+        portfolio.applyDelta(event);
+        // A raised high moves an item's distance from it without a price change, so it counts too
+        if (touchesHeldItem(event.getPriceChanged()) || touchesHeldItem(event.getAllTimeHighChanged())
+            || touchesHeldItem(event.getReachedAllTimeHigh()) || touchesHeldItem(event.getLostAllTimeHigh())) {
+            highlightIndex.invalidate();
+        }
+        
+        // Notifications are batched and sent from the notifier's own thread
+        athNotifier.offer(event);
+        SellNowPanel shownPanel = panel;
+        if (shownPanel != null && (touchesWatchedItem(event.getPriceChanged())
+            || touchesWatchedItem(event.getAllTimeHighChanged()) || touchesWatchedItem(event.getReachedAllTimeHigh())
+            || touchesWatchedItem(event.getLostAllTimeHigh()))) {
+            shownPanel.refresh();
+        }
+    }
+    
+    private boolean touchesHeldItem(int[] itemIds) {
+        for (int itemId : itemIds) {
+            if (interestSet.contains(itemId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private boolean touchesWatchedItem(int[] itemIds) {
+        for (int itemId : itemIds) {
+            if (watchlist.contains(itemId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Draw the side panel icon, a green rising arrow, rather than shipping an image resource
+     */
+    private static BufferedImage createPanelIcon() {
+        BufferedImage icon = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = icon.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.setColor(new Color(0, 200, 83));
+        graphics.setStroke(new BasicStroke(2f));
+        graphics.drawPolyline(new int[]{1, 6, 9, 14}, new int[]{13, 8, 11, 3}, 4);
+        graphics.fillPolygon(new int[]{9, 15, 15}, new int[]{2, 2, 8}, 3);
+        graphics.dispose();
+        return icon;
+    }
+    
+    @Subscribe
+    public void onConfigChanged(ConfigChanged event) {
+        // The watchlist saves itself into the config, nothing else depends on it
+        if ("sellnow".equals(event.getGroup()) && !Watchlist.CONFIG_KEY.equals(event.getKey())) {
+            highlightIndex.invalidate();
+            overlay.invalidateSettings();
+            updateDebugOverlay();
+            portfolio.setNearPercent(config.nearAllTimeHighPercent());
+            updatePortfolioInfoBox();
+            sharedPriceCache.setEnabled(config.sharePrices());
+            athNotifier.setNotifyHighs(config.notifyAllTimeHighs());
+            if ("updateIntervalMinutes".equals(event.getKey())) {
+                priceService.setUpdateInterval(config.updateIntervalMinutes());
+            } else if ("backfillHistory".equals(event.getKey())) {
+                if (config.backfillHistory()) {
+                    backfillService.start();
+                } else {
+                    backfillService.stop();
+                }
+            }
+        }
+    }
+    
+    private void updatePortfolioInfoBox() {
+        infoBoxManager.removeInfoBox(portfolioInfoBox);
+        if (config.showPortfolio()) {
+            infoBoxManager.addInfoBox(portfolioInfoBox);
+        }
+    }
+    
+    /**
+     * Show or hide the debug metrics panel, timing frames only while it is shown
+     */
+    private void updateDebugOverlay() {
+        boolean enabled = config.showDebugMetrics();
+        metrics.setFrameTimingEnabled(enabled);
+        if (enabled) {
+            overlayManager.add(debugOverlay);
+        } else {
+            overlayManager.remove(debugOverlay);
+        }
+    }
+    
+    /**
+     * Record a container's contents for the overlay and the interest set, and move its items to the front
+     * of the backfill
+     */
+    private void indexContainer(ItemContainer container) {
+        if (container == null) {
+            return;
+        }
+        int containerId = container.getId();
+        if (containerId != InventoryID.INVENTORY.getId() && containerId != InventoryID.BANK.getId()) {
+            return;
+        }
+        
+        Item[] items = container.getItems();
+        int[] itemIds = new int[items.length];
+        int[] canonicalItemIds = new int[items.length];
+        int[] quantities = new int[items.length];
+        for (int i = 0; i < items.length; i++) {
+            itemIds[i] = items[i].getId();
+            canonicalItemIds[i] = itemManager.canonicalize(items[i].getId());
+            quantities[i] = items[i].getQuantity();
+        }
+        
+        highlightIndex.setContainer(containerId, itemIds, canonicalItemIds);
+        interestSet.setContainer(containerId, canonicalItemIds);
+        portfolio.setContainer(containerId, canonicalItemIds, quantities);
+        
+        // Backfill newly held items straight away
+        backfillService.prioritize(canonicalItemIds);
+    }
+    
     @Provides
     SellNowConfig provideConfig(ConfigManager configManager) {
         return configManager.getConfig(SellNowConfig.class);
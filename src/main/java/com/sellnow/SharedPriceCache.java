@@ -0,0 +1,290 @@
+package com.sellnow;
+
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.RuneLite;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Prices shared between RuneLite clients on one machine through a memory-mapped file
+ * The client holding the lock file is the leader: it polls the price API as usual and writes every changed
+ * item's price and trade times into the file. The others follow, reading new versions of the file instead
+ * of fetching and parsing, and take over the lock when the leader exits since the OS releases it then.
+ * Writes are guarded by a sequence number that is odd while a write is in progress (a seqlock), so a
+ * follower retries a read that overlapped a write instead of taking a torn one
+ */
+@Slf4j
+@Singleton
+public class SharedPriceCache {
+    
+    private static final int MAGIC = 0x534E5343; // "SNSC"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int SEQUENCE_OFFSET = 8;
+    // Price, high time and low time
+    private static final int RECORD_SIZE = 24;
+    /** Item IDs at or above this are not shared */
+    static final int CAPACITY = 65_536;
+    private static final long FILE_SIZE = HEADER_SIZE + (long) CAPACITY * RECORD_SIZE;
+    private static final int READ_ATTEMPTS = 4;
+    
+    private static final VarHandle SEQUENCE =
+        MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    
+    private final File file;
+    private final File lockFile;
+    private volatile boolean enabled;
+    
+    // Guarded by this
+    private FileChannel lockChannel;
+    private volatile FileLock lock;
+    private FileChannel channel;
+    private volatile MappedByteBuffer buffer;
+    private boolean writing;
+    private int lastReadSequence = -1;
+    
+    @Inject
+    public SharedPriceCache() {
+        this(new File(RuneLite.RUNELITE_DIR, "sell-now"));
+    }
+    
+    SharedPriceCache(File dir) {
+        this.file = new File(dir, "shared-prices.dat");
+        this.lockFile = new File(dir, "shared-prices.lock");
+    }
+    
+    /**
+     * Turn sharing on or off, takes effect from the next poll
+     * Turning it off gives up the lead straight away
+     */
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            close();
+        }
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Check whether this client leads, taking the lead if no other client holds it
+     * Called before every poll, so a follower takes over within one follow interval of the leader exiting
+     */
+    synchronized boolean tryLead() {
+        if (lock != null) {
+            return true;
+        }
+        
+        try {
+            if (lockChannel == null) {
+                File dir = lockFile.getParentFile();
+                if (!dir.isDirectory() && !dir.mkdirs()) {
+                    throw new IOException("Unable to create " + dir);
+                }
+                lockChannel = FileChannel.open(lockFile.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            }
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Another plugin instance in this JVM leads
+            lock = null;
+        } catch (IOException e) {
+            log.warn("Unable to lock shared price cache, fetching prices directly", e);
+            return true;
+        }
+        
+        if (lock != null) {
+            log.debug("Leading the shared price cache");
+            unmap();
+        }
+        return lock != null;
+    }
+    
+    /**
+     * Whether this client currently holds the lead
+     */
+    public boolean isLeader() {
+        return lock != null;
+    }
+    
+    /**
+     * Start writing a new version, followers ignore the file until {@link #endWrite()}
+     * Only called by the leader, from the price update thread
+     */
+    synchronized void beginWrite() {
+        if (lock == null || !map(true)) {
+            return;
+        }
+        int sequence = (int) SEQUENCE.getVolatile(buffer, SEQUENCE_OFFSET);
+        // Already odd if a previous leader died mid-write, skip to the next odd value so followers see a change
+        SEQUENCE.setVolatile(buffer, SEQUENCE_OFFSET, sequence + 1 + (sequence & 1));
+        writing = true;
+    }
+    
+    synchronized void write(int itemId, long price, long highTime, long lowTime) {
+        if (!writing || itemId < 0 || itemId >= CAPACITY) {
+            return;
+        }
+        int offset = HEADER_SIZE + itemId * RECORD_SIZE;
+        buffer.putLong(offset, price);
+        buffer.putLong(offset + 8, highTime);
+        buffer.putLong(offset + 16, lowTime);
+    }
+    
+    synchronized void endWrite() {
+        if (!writing) {
+            return;
+        }
+        int sequence = (int) SEQUENCE.getVolatile(buffer, SEQUENCE_OFFSET);
+        SEQUENCE.setVolatile(buffer, SEQUENCE_OFFSET, sequence + 1);
+        writing = false;
+    }
+    
+    /**
+     * Read the prices that are newer than the current table into a batch, if the leader wrote a new version
+     * Only called by followers, from the price update thread
+     * @return true if a complete new version was read, even if nothing in it was newer
+     */
+    synchronized boolean read(PriceTable current, PriceUpdateBatch batch) {
+        batch.clear();
+        if (!map(false)) {
+            return false;
+        }
+        
+        for (int attempt = 0; attempt < READ_ATTEMPTS; attempt++) {
+            int before = (int) SEQUENCE.getVolatile(buffer, SEQUENCE_OFFSET);
+            if (before == lastReadSequence) {
+                return false;
+            }
+            if ((before & 1) != 0) {
+                // The leader is mid-write, give it a moment
+                Thread.yield();
+                continue;
+            }
+            
+            batch.clear();
+            for (int itemId = 0; itemId < CAPACITY; itemId++) {
+                int offset = HEADER_SIZE + itemId * RECORD_SIZE;
+                long price = buffer.getLong(offset);
+                if (price <= 0) {
+                    continue;
+                }
+                long highTime = buffer.getLong(offset + 8);
+                long lowTime = buffer.getLong(offset + 16);
+                // Never go back to older trades than this client already has
+                if (highTime > current.getHighTime(itemId) || lowTime > current.getLowTime(itemId)) {
+                    batch.accept(itemId, price, highTime, 0, lowTime);
+                }
+            }
+            
+            VarHandle.acquireFence();
+            if ((int) SEQUENCE.getVolatile(buffer, SEQUENCE_OFFSET) == before) {
+                lastReadSequence = before;
+                return true;
+            }
+        }
+        batch.clear();
+        return false;
+    }
+    
+    /**
+     * Get how many versions have been written to the shared file, for the debug panel, or -1 if it is not mapped
+     */
+    public int getVersion() {
+        MappedByteBuffer map = buffer;
+        return map != null ? (int) SEQUENCE.getVolatile(map, SEQUENCE_OFFSET) >>> 1 : -1;
+    }
+    
+    /**
+     * Map the shared file, read-write for the leader and read-only for followers
+     * @return false if there is no usable file yet
+     */
+    private boolean map(boolean leader) {
+        if (buffer != null) {
+            return true;
+        }
+        
+        try {
+            if (leader) {
+                channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                if (channel.size() >= HEADER_SIZE) {
+                    MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+                    if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                        // Unknown format, start over rather than share it
+                        channel.truncate(0);
+                    }
+                }
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+            } else {
+                if (!file.isFile()) {
+                    return false;
+                }
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                if (channel.size() < FILE_SIZE) {
+                    unmap();
+                    return false;
+                }
+                MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, FILE_SIZE);
+                if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+                    unmap();
+                    return false;
+                }
+                buffer = map;
+            }
+            return true;
+        } catch (IOException e) {
+            log.warn("Unable to map shared price cache", e);
+            unmap();
+            return false;
+        }
+    }
+    
+    private void unmap() {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            log.warn("Error closing shared price cache", e);
+        } finally {
+            channel = null;
+            buffer = null;
+            writing = false;
+        }
+    }
+    
+    /**
+     * Give up the lead and release the files, so another client can take over
+     */
+    synchronized void close() {
+        unmap();
+        try {
+            if (lockChannel != null) {
+                // Closing the channel also releases the lock
+                lockChannel.close();
+            }
+        } catch (IOException e) {
+            log.warn("Error releasing shared price cache lock", e);
+        } finally {
+            lockChannel = null;
+            lock = null;
+            lastReadSequence = -1;
+        }
+    }
+}
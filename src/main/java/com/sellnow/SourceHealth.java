@@ -0,0 +1,75 @@
+package com.sellnow;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Success and latency tracking for one price source
+ * Used to decide how long to wait for the primary source before hedging with the fallback
+ */
+public class SourceHealth {
+    
+    /** Consecutive failures after which a source is considered down */
+    private static final int UNHEALTHY_AFTER_FAILURES = 3;
+    
+    private final String name;
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    
+    // Guarded by this for writes
+    private volatile int consecutiveFailures;
+    private volatile long averageLatencyNanos;
+    private volatile long lastSuccessTime;
+    
+    SourceHealth(String name) {
+        this.name = name;
+    }
+    
+    synchronized void recordSuccess(long latencyNanos) {
+        successes.increment();
+        consecutiveFailures = 0;
+        lastSuccessTime = System.currentTimeMillis();
+        // Exponentially weighted, a quarter of each new sample
+        averageLatencyNanos = averageLatencyNanos == 0
+            ? latencyNanos
+            : averageLatencyNanos + (latencyNanos - averageLatencyNanos) / 4;
+    }
+    
+    synchronized void recordFailure() {
+        failures.increment();
+        consecutiveFailures++;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public boolean isHealthy() {
+        return consecutiveFailures < UNHEALTHY_AFTER_FAILURES;
+    }
+    
+    public long getSuccesses() {
+        return successes.sum();
+    }
+    
+    public long getFailures() {
+        return failures.sum();
+    }
+    
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+    
+    /**
+     * Get the weighted average latency of successful fetches, or 0 before the first one
+     */
+    public long getAverageLatencyNanos() {
+        return averageLatencyNanos;
+    }
+    
+    /**
+     * Get when the source last answered successfully, in epoch milliseconds, or 0
+     */
+    public long getLastSuccessTime() {
+        return lastSuccessTime;
+    }
+}
@@ -0,0 +1,162 @@
+package com.sellnow;
+
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.config.ConfigManager;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Items pinned in the side panel, each with an optional alert price, saved in the plugin's config
+ * An item alerts once when its price reaches its alert price, or its all-time high when it has none,
+ * and only again after falling back below it. Items already past their alert when first checked do not alert
+ */
+@Slf4j
+@Singleton
+public class Watchlist {
+    
+    static final String CONFIG_KEY = "watchlist";
+    private static final int MAX_ITEMS = 100;
+    
+    private final ConfigManager configManager;
+    
+    // Guarded by this, in the order items were pinned
+    private final Map<Integer, Entry> entries = new LinkedHashMap<>();
+    
+    @Inject
+    public Watchlist(ConfigManager configManager) {
+        this.configManager = configManager;
+    }
+    
+    /**
+     * Load the saved watchlist, stored as comma separated itemId:alertPrice pairs
+     */
+    public synchronized void load() {
+        entries.clear();
+        String saved = configManager.getConfiguration("sellnow", CONFIG_KEY);
+        if (saved == null || saved.isEmpty()) {
+            return;
+        }
+        
+        for (String pair : saved.split(",")) {
+            int separator = pair.indexOf(':');
+            try {
+                int itemId = Integer.parseInt(separator < 0 ? pair : pair.substring(0, separator));
+                long alertPrice = separator < 0 ? 0 : Long.parseLong(pair.substring(separator + 1));
+                entries.put(itemId, new Entry(Math.max(0, alertPrice)));
+            } catch (NumberFormatException e) {
+                log.debug("Ignoring malformed watchlist entry {}", pair);
+            }
+        }
+    }
+    
+    /**
+     * Pin an item, alerting at its all-time high until an alert price is set
+     * @return false if the watchlist is full
+     */
+    public synchronized boolean pin(int itemId) {
+        if (entries.containsKey(itemId)) {
+            return true;
+        }
+        if (entries.size() >= MAX_ITEMS) {
+            return false;
+        }
+        entries.put(itemId, new Entry(0));
+        save();
+        return true;
+    }
+    
+    public synchronized void unpin(int itemId) {
+        if (entries.remove(itemId) != null) {
+            save();
+        }
+    }
+    
+    public synchronized boolean contains(int itemId) {
+        return entries.containsKey(itemId);
+    }
+    
+    /**
+     * Get the pinned items, in the order they were pinned
+     */
+    public synchronized int[] getItems() {
+        int[] items = new int[entries.size()];
+        int i = 0;
+        for (int itemId : entries.keySet()) {
+            items[i++] = itemId;
+        }
+        return items;
+    }
+    
+    /**
+     * Get an item's alert price, or 0 if it alerts at its all-time high
+     */
+    public synchronized long getAlertPrice(int itemId) {
+        Entry entry = entries.get(itemId);
+        return entry != null ? entry.alertPrice : 0;
+    }
+    
+    /**
+     * @param alertPrice The price to alert at, or 0 to alert at the all-time high
+     */
+    public synchronized void setAlertPrice(int itemId, long alertPrice) {
+        Entry entry = entries.get(itemId);
+        if (entry == null || entry.alertPrice == Math.max(0, alertPrice)) {
+            return;
+        }
+        entry.alertPrice = Math.max(0, alertPrice);
+        // Judge the new threshold from the next check without alerting for where the price already is
+        entry.checked = false;
+        save();
+    }
+    
+    /**
+     * Check the pinned items against new prices
+     * @return The items that reached their alert since the last check
+     */
+    public synchronized int[] check(PriceTable prices) {
+        int[] reached = new int[0];
+        for (Map.Entry<Integer, Entry> pinned : entries.entrySet()) {
+            int itemId = pinned.getKey();
+            Entry entry = pinned.getValue();
+            long price = prices.getCurrentPrice(itemId);
+            if (price <= 0) {
+                continue;
+            }
+            
+            boolean atAlert = entry.alertPrice > 0 ? price >= entry.alertPrice : prices.isAtAllTimeHigh(itemId);
+            if (atAlert && entry.checked && !entry.reached) {
+                reached = Arrays.copyOf(reached, reached.length + 1);
+                reached[reached.length - 1] = itemId;
+            }
+            entry.reached = atAlert;
+            entry.checked = true;
+        }
+        return reached;
+    }
+    
+    private void save() {
+        StringBuilder saved = new StringBuilder();
+        for (Map.Entry<Integer, Entry> pinned : entries.entrySet()) {
+            if (saved.length() > 0) {
+                saved.append(',');
+            }
+            saved.append(pinned.getKey()).append(':').append(pinned.getValue().alertPrice);
+        }
+        configManager.setConfiguration("sellnow", CONFIG_KEY, saved.toString());
+    }
+    
+    private static final class Entry {
+        private long alertPrice;
+        // Whether a check has seen a price since the alert price was set, and if it was at the alert then
+        private boolean checked;
+        private boolean reached;
+        
+        Entry(long alertPrice) {
+            this.alertPrice = alertPrice;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.sellnow;
+
+import com.google.gson.stream.JsonReader;
+import okhttp3.Call;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * Prices from the OSRS Wiki /latest endpoint
+ * Polls are conditional on the validators of the last applied response, and a body identical to the
+ * last applied one is skipped without parsing
+ */
+@Singleton
+class WikiPriceSource implements PriceSource {
+    
+    private static final String OSRS_WIKI_API = "https://prices.runescape.wiki/api/v1/osrs/latest";
+    
+    private final OkHttpClient httpClient;
+    private final HttpUrl latestUrl;
+    private final SellNowMetrics metrics;
+    private final CRC32C bodyChecksum = new CRC32C();
+    private byte[] bodyBuffer = new byte[512 * 1024];
+    private volatile Call inFlightCall;
+    
+    // Validators of the last applied response, and of the last fetched one until it is acknowledged
+    private volatile String lastETag;
+    private volatile String lastModified;
+    private volatile long lastBodyChecksum = -1;
+    private String fetchedETag;
+    private String fetchedModified;
+    private long fetchedBodyChecksum = -1;
+    
+    @Inject
+    WikiPriceSource(OkHttpClient httpClient, SellNowMetrics metrics) {
+        this(httpClient, metrics, HttpUrl.get(OSRS_WIKI_API));
+    }
+    
+    /**
+     * @param latestUrl The /latest endpoint, so prices can be served by a local stand-in
+     */
+    WikiPriceSource(OkHttpClient httpClient, SellNowMetrics metrics, HttpUrl latestUrl) {
+        this.httpClient = httpClient;
+        this.latestUrl = latestUrl;
+        this.metrics = metrics;
+    }
+    
+    @Override
+    public String getName() {
+        return "OSRS Wiki";
+    }
+    
+    @Override
+    public Result fetch(PriceTable current, PriceUpdateBatch batch) throws IOException {
+        // Fetch latest prices, conditionally if we have validators from the last poll
+        // OkHttp requests gzip and decompresses it transparently as long as Accept-Encoding is not set here
+        Request.Builder requestBuilder = new Request.Builder()
+            .url(latestUrl)
+            .header("User-Agent", "RuneLite Sell-Now Plugin");
+        String eTag = lastETag;
+        String modified = lastModified;
+        if (eTag != null) {
+            requestBuilder.header("If-None-Match", eTag);
+        }
+        if (modified != null) {
+            requestBuilder.header("If-Modified-Since", modified);
+        }
+        
+        long fetchStart = System.nanoTime();
+        Call call = httpClient.newCall(requestBuilder.build());
+        inFlightCall = call;
+        try (Response response = call.execute()) {
+            int status = response.code();
+            metrics.recordFetch(fetchStart, status);
+            if (status == 304) {
+                fetchedETag = eTag;
+                fetchedModified = modified;
+                fetchedBodyChecksum = lastBodyChecksum;
+                return Result.NOT_MODIFIED;
+            }
+            
+            if (!response.isSuccessful() || response.body() == null) {
+                long retryAfterMillis = status == 429 || status == 503
+                    ? TimeUnit.SECONDS.toMillis(AthBackfillService.parseRetryAfter(response.header("Retry-After")))
+                    : 0;
+                throw new PriceSourceException("HTTP " + status, status, retryAfterMillis);
+            }
+            
+            Result result = readLatest(response.body().byteStream(), batch);
+            fetchedETag = response.header("ETag");
+            fetchedModified = response.header("Last-Modified");
+            return result;
+        } finally {
+            // Leave a newer call alone if this fetch outlived a restart
+            if (inFlightCall == call) {
+                inFlightCall = null;
+            }
+        }
+    }
+    
+    /**
+     * Read and parse a /latest body into a batch
+     * Also used by benchmarks to drive the ingestion path without HTTP
+     */
+    Result readLatest(InputStream body, PriceUpdateBatch batch) throws IOException {
+        // Read into a reused buffer so an unchanged feed can be skipped without parsing
+        int length = readBody(body);
+        metrics.recordBody(length);
+        bodyChecksum.reset();
+        bodyChecksum.update(bodyBuffer, 0, length);
+        long checksum = bodyChecksum.getValue() ^ (long) length << 32;
+        batch.clear();
+        fetchedBodyChecksum = checksum;
+        fetchedETag = null;
+        fetchedModified = null;
+        if (checksum == lastBodyChecksum) {
+            return Result.UNCHANGED;
+        }
+        
+        // Parse the bytes directly instead of building a String and JSON tree
+        long parseStart = System.nanoTime();
+        try (JsonReader reader = new JsonReader(
+            new InputStreamReader(new ByteArrayInputStream(bodyBuffer, 0, length), StandardCharsets.UTF_8))) {
+            LatestPricesParser.parse(reader, batch);
+        }
+        metrics.recordParse(System.nanoTime() - parseStart);
+        return Result.UPDATED;
+    }
+    
+    /**
+     * Read a response body into the reused body buffer, growing it if needed
+     * @return The number of bytes read
+     */
+    private int readBody(InputStream in) throws IOException {
+        int length = 0;
+        int read;
+        while ((read = in.read(bodyBuffer, length, bodyBuffer.length - length)) != -1) {
+            length += read;
+            if (length == bodyBuffer.length) {
+                bodyBuffer = Arrays.copyOf(bodyBuffer, bodyBuffer.length * 2);
+            }
+        }
+        return length;
+    }
+    
+    @Override
+    public void acknowledge() {
+        lastBodyChecksum = fetchedBodyChecksum;
+        lastETag = fetchedETag;
+        lastModified = fetchedModified;
+    }
+    
+    @Override
+    public void cancel() {
+        Call call = inFlightCall;
+        if (call != null) {
+            call.cancel();
+        }
+    }
+    
+    @Override
+    public void reset() {
+        lastETag = null;
+        lastModified = null;
+        lastBodyChecksum = -1;
+        fetchedETag = null;
+        fetchedModified = null;
+        fetchedBodyChecksum = -1;
+    }
+}
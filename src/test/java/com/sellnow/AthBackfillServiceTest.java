@@ -0,0 +1,118 @@
+package com.sellnow;
+
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AthBackfillServiceTest {
+    
+    private static final int ITEM = 4151;
+    private static final int OTHER_ITEM = 11802;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private final OkHttpClient httpClient = new OkHttpClient();
+    private ReplayServer server;
+    private GEPriceService priceService;
+    private AthBackfillService backfill;
+    
+    @Before
+    public void setUp() throws Exception {
+        server = new ReplayServer();
+        priceService = TestServices.priceService(folder.getRoot(), new StubPriceSource("Primary", false), null,
+            new InterestSet());
+    }
+    
+    @After
+    public void tearDown() {
+        if (backfill != null) {
+            backfill.stop();
+        }
+        server.close();
+    }
+    
+    @Test(timeout = 10_000)
+    public void testStart_AveragesServed_HighsStampedWithPeriodStart() throws Exception {
+        // Arrange
+        server.setAverages("24h", averages(ITEM, 1_500_000, 1_600_000_000L));
+        server.setAverages("1h", averages(ITEM, 1_400_000, 1_600_080_000L));
+        backfill = newBackfill();
+        
+        // Act
+        backfill.start();
+        
+        // Assert
+        assertTrue(TestServices.awaitAllTimeHigh(priceService, ITEM, 1_500_000, 5_000));
+        assertEquals(1_600_000_000_000L, priceService.getPriceTable().getAllTimeHighTime(ITEM));
+    }
+    
+    @Test(timeout = 30_000)
+    public void testPrioritize_TimeseriesThrottled_RequeuedWithoutUsingAttempts() throws Exception {
+        // Arrange
+        server.setTimeseries(ITEM, timeseries(ITEM, 2_000_000, 1_500_000_000L));
+        // One more throttled answer than the backfill's attempts, which requeues must not use up
+        server.throttleTimeseries(3, 429, 1);
+        backfill = newBackfill();
+        backfill.start();
+        
+        // Act
+        backfill.prioritize(new int[]{ITEM});
+        
+        // Assert
+        assertTrue(TestServices.awaitAllTimeHigh(priceService, ITEM, 2_000_000, 20_000));
+        assertEquals(1_500_000_000_000L, priceService.getPriceTable().getAllTimeHighTime(ITEM));
+        assertEquals(4, server.getTimeseriesRequests(ITEM));
+    }
+    
+    @Test(timeout = 30_000)
+    public void testStart_CheckpointFromEarlierRun_SkipsCompletedItems() throws Exception {
+        // Arrange
+        server.setTimeseries(ITEM, timeseries(ITEM, 2_000_000, 1_500_000_000L));
+        server.setTimeseries(OTHER_ITEM, timeseries(OTHER_ITEM, 30_000_000, 1_500_000_000L));
+        backfill = newBackfill();
+        backfill.start();
+        backfill.prioritize(new int[]{ITEM});
+        assertTrue(TestServices.awaitAllTimeHigh(priceService, ITEM, 2_000_000, 10_000));
+        backfill.stop();
+        
+        // Act
+        backfill = newBackfill();
+        backfill.start();
+        backfill.prioritize(new int[]{ITEM, OTHER_ITEM});
+        
+        // Assert
+        assertTrue(TestServices.awaitAllTimeHigh(priceService, OTHER_ITEM, 30_000_000, 10_000));
+        assertEquals(1, server.getTimeseriesRequests(ITEM));
+    }
+    
+    private AthBackfillService newBackfill() {
+        return new AthBackfillService(httpClient, priceService, new InterestSet(), server.baseUrl(),
+            new File(folder.getRoot(), "backfill.dat"));
+    }
+    
+    private static byte[] averages(int itemId, long avgHighPrice, long timestamp) {
+        // The wiki sends the period's timestamp after the data
+        return ("{\"data\":{\"" + itemId + "\":{\"avgHighPrice\":" + avgHighPrice + ",\"highPriceVolume\":10,"
+            + "\"avgLowPrice\":" + (avgHighPrice - 1000) + ",\"lowPriceVolume\":12}},\"timestamp\":" + timestamp
+            + "}").getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private static byte[] timeseries(int itemId, long highest, long highestAt) {
+        return ("{\"data\":["
+            + "{\"timestamp\":" + (highestAt - 86_400) + ",\"avgHighPrice\":" + (highest - 5000)
+            + ",\"avgLowPrice\":null,\"highPriceVolume\":3,\"lowPriceVolume\":0},"
+            + "{\"timestamp\":" + highestAt + ",\"avgHighPrice\":" + highest
+            + ",\"avgLowPrice\":" + (highest - 9000) + ",\"highPriceVolume\":5,\"lowPriceVolume\":7}"
+            + "],\"itemId\":" + itemId + "}").getBytes(StandardCharsets.UTF_8);
+    }
+}
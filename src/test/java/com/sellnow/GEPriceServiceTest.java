@@ -0,0 +1,206 @@
+package com.sellnow;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GEPriceServiceTest {
+    
+    private static final int ITEM = 4151;
+    // Hedge delay before the primary source has answered once
+    private static final long FIRST_HEDGE_DELAY_MILLIS = 3000;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private final SellNowMetrics metrics = new SellNowMetrics();
+    private GEPriceService priceService;
+    
+    @After
+    public void stop() {
+        if (priceService != null) {
+            priceService.stopPriceUpdates();
+        }
+    }
+    
+    @Test(timeout = 10_000)
+    public void testApplyOwnTrade_SlowPollInFlight_AppliedBeforeFetchEnds() throws Exception {
+        // Arrange
+        StubPriceSource primary = new StubPriceSource("Primary", false);
+        primary.setPrice(ITEM, 1_000_000, nowSeconds() - 60);
+        primary.hold();
+        priceService = newPriceService(primary, null);
+        priceService.startPriceUpdates(5);
+        assertTrue(primary.awaitFetch(5_000));
+        
+        // Act
+        priceService.applyOwnTrade(ITEM, 1_200_000, nowSeconds());
+        
+        // Assert
+        assertTrue("the fill waited for the fetch", TestServices.awaitPrice(priceService, ITEM, 1_200_000, 1_000));
+        assertEquals(1, primary.getFetches());
+        primary.release();
+    }
+    
+    @Test(timeout = 10_000)
+    public void testMergeHistoricalHighs_SlowPollInFlight_AppliedBeforeFetchEnds() throws Exception {
+        // Arrange
+        StubPriceSource primary = new StubPriceSource("Primary", false);
+        primary.hold();
+        priceService = newPriceService(primary, null);
+        priceService.startPriceUpdates(5);
+        assertTrue(primary.awaitFetch(5_000));
+        PriceUpdateBatch highs = new PriceUpdateBatch(1);
+        highs.accept(ITEM, 2_000_000, 1_500_000_000L, 0, 0);
+        
+        // Act
+        priceService.mergeHistoricalHighs(highs);
+        highs.clear();
+        
+        // Assert
+        assertTrue("the merge waited for the fetch",
+            TestServices.awaitAllTimeHigh(priceService, ITEM, 2_000_000, 1_000));
+        assertEquals(1_500_000_000_000L, priceService.getPriceTable().getAllTimeHighTime(ITEM));
+        assertEquals(1, primary.getFetches());
+        primary.release();
+    }
+    
+    @Test(timeout = 10_000)
+    public void testStartPriceUpdates_PrimarySlow_FallbackAppliedAfterHedgeDelay() throws Exception {
+        // Arrange
+        StubPriceSource primary = new StubPriceSource("Primary", false);
+        primary.setPrice(ITEM, 1_000_000, nowSeconds() - 60);
+        primary.hold();
+        StubPriceSource fallback = new StubPriceSource("Fallback", true);
+        fallback.setPrice(ITEM, 900_000, 0);
+        priceService = newPriceService(primary, fallback);
+        
+        // Act
+        long start = System.currentTimeMillis();
+        priceService.startPriceUpdates(5);
+        
+        // Assert
+        assertTrue(TestServices.awaitPrice(priceService, ITEM, 900_000, FIRST_HEDGE_DELAY_MILLIS + 2_000));
+        assertTrue("hedged before the delay", System.currentTimeMillis() - start >= FIRST_HEDGE_DELAY_MILLIS - 100);
+        assertEquals(1, primary.getFetches());
+        assertEquals(1, fallback.getFetches());
+    }
+    
+    @Test(timeout = 10_000)
+    public void testStartPriceUpdates_PrimaryAnswersAfterHedge_PrimaryPriceWins() throws Exception {
+        // Arrange
+        StubPriceSource primary = new StubPriceSource("Primary", false);
+        primary.setPrice(ITEM, 1_000_000, nowSeconds() - 60);
+        primary.hold();
+        StubPriceSource fallback = new StubPriceSource("Fallback", true);
+        fallback.setPrice(ITEM, 900_000, 0);
+        priceService = newPriceService(primary, fallback);
+        priceService.startPriceUpdates(5);
+        assertTrue(TestServices.awaitPrice(priceService, ITEM, 900_000, FIRST_HEDGE_DELAY_MILLIS + 2_000));
+        
+        // Act
+        primary.release();
+        
+        // Assert
+        assertTrue(TestServices.awaitPrice(priceService, ITEM, 1_000_000, 1_000));
+        assertTrue(TestServices.await(() -> metrics.getLastOutcome() == SellNowMetrics.PollOutcome.UPDATED, 1_000));
+        assertEquals("Primary", metrics.getLastSource());
+        assertEquals(1, fallback.getFetches());
+    }
+    
+    @Test(timeout = 10_000)
+    public void testStartPriceUpdates_PrimaryAnswersFirst_FallbackNeverAsked() throws Exception {
+        // Arrange
+        StubPriceSource primary = new StubPriceSource("Primary", false);
+        primary.setPrice(ITEM, 1_000_000, nowSeconds() - 60);
+        StubPriceSource fallback = new StubPriceSource("Fallback", true);
+        fallback.setPrice(ITEM, 900_000, 0);
+        priceService = newPriceService(primary, fallback);
+        
+        // Act
+        priceService.startPriceUpdates(5);
+        
+        // Assert
+        assertTrue(TestServices.awaitPrice(priceService, ITEM, 1_000_000, 1_000));
+        // Past the hedge delay, so a hedge that was not cancelled would have run
+        Thread.sleep(FIRST_HEDGE_DELAY_MILLIS + 500);
+        assertEquals(0, fallback.getFetches());
+        assertEquals(1_000_000, priceService.getPriceTable().getCurrentPrice(ITEM));
+        assertEquals(1, priceService.getPrimaryHealth().getSuccesses());
+    }
+    
+    @Test(timeout = 10_000)
+    public void testStopPriceUpdates_FetchEndsAfterStop_PricesDiscarded() throws Exception {
+        // Arrange
+        StubPriceSource primary = new StubPriceSource("Primary", false);
+        primary.setPrice(ITEM, 1_000_000, nowSeconds() - 60);
+        primary.hold();
+        priceService = newPriceService(primary, null);
+        priceService.startPriceUpdates(5);
+        assertTrue(primary.awaitFetch(5_000));
+        
+        // Act
+        // Cancelling the source lets the held fetch finish, successfully, after the stop
+        priceService.stopPriceUpdates();
+        
+        // Assert
+        assertTrue(TestServices.await(() -> priceService.getPrimaryHealth().getSuccesses() == 1, 1_000));
+        assertFalse(TestServices.awaitPrice(priceService, ITEM, 1_000_000, 500));
+        priceService.startPriceUpdates(5);
+        assertTrue("a restart polls again", TestServices.awaitPrice(priceService, ITEM, 1_000_000, 2_000));
+        assertEquals(2, primary.getFetches());
+    }
+    
+    @Test(timeout = 20_000)
+    public void testStartPriceUpdates_PrimaryFailedThreeTimes_UnhealthyAndHedgedAtOnce() throws Exception {
+        // Arrange
+        StubPriceSource primary = new StubPriceSource("Primary", false);
+        primary.setPrice(ITEM, 1_000_000, nowSeconds() - 60);
+        primary.setFailure(new IOException("down"));
+        StubPriceSource fallback = new StubPriceSource("Fallback", true);
+        fallback.setPrice(ITEM, 900_000, 0);
+        priceService = newPriceService(primary, fallback);
+        // A failed poll backs off for far longer than a test, so each failure is a fresh start
+        for (int failures = 1; failures <= 3; failures++) {
+            long expected = failures;
+            priceService.startPriceUpdates(5);
+            assertTrue(TestServices.await(
+                () -> metrics.getPollCount(SellNowMetrics.PollOutcome.FAILED) == expected, 2_000));
+            priceService.stopPriceUpdates();
+        }
+        SourceHealth health = priceService.getPrimaryHealth();
+        assertFalse(health.isHealthy());
+        assertEquals(3, health.getConsecutiveFailures());
+        assertEquals(3, fallback.getFetches());
+        primary.setFailure(null);
+        primary.hold();
+        fallback.setPrice(ITEM, 950_000, 0);
+        
+        // Act
+        priceService.startPriceUpdates(5);
+        
+        // Assert
+        assertTrue("waited to hedge", TestServices.awaitPrice(priceService, ITEM, 950_000, 1_000));
+        primary.release();
+        assertTrue(TestServices.awaitPrice(priceService, ITEM, 1_000_000, 1_000));
+        assertTrue(health.isHealthy());
+        assertEquals(3, health.getFailures());
+        assertEquals(1, health.getSuccesses());
+    }
+    
+    private GEPriceService newPriceService(StubPriceSource primary, StubPriceSource fallback) {
+        return TestServices.priceService(folder.getRoot(), primary, fallback, new InterestSet(), metrics);
+    }
+    
+    private static long nowSeconds() {
+        return TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+    }
+}
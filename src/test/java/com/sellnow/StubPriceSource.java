@@ -0,0 +1,136 @@
+package com.sellnow;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A price source for tests, answering with prices set up front
+ * Fetches can be held until released, delayed or made to fail
+ */
+final class StubPriceSource implements PriceSource {
+    
+    private final String name;
+    private final boolean estimates;
+    private final Map<Integer, long[]> prices = new LinkedHashMap<>();
+    private final Semaphore fetchesStarted = new Semaphore(0);
+    private final AtomicInteger fetches = new AtomicInteger();
+    private volatile CountDownLatch held;
+    private volatile long delayMillis;
+    private volatile IOException failure;
+    
+    /**
+     * @param estimates Whether the prices are estimates rather than trades, as the fallback's are
+     */
+    StubPriceSource(String name, boolean estimates) {
+        this.name = name;
+        this.estimates = estimates;
+    }
+    
+    @Override
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * Answer with a price traded at a time, in epoch seconds
+     */
+    synchronized StubPriceSource setPrice(int itemId, long price, long time) {
+        prices.put(itemId, new long[]{price, time});
+        return this;
+    }
+    
+    /**
+     * Make fetches wait until {@link #release()} or {@link #cancel()}
+     * Like a blocking socket read, a held fetch is not ended by interrupting its thread
+     */
+    void hold() {
+        held = new CountDownLatch(1);
+    }
+    
+    void release() {
+        CountDownLatch latch = held;
+        if (latch != null) {
+            latch.countDown();
+        }
+    }
+    
+    void setDelayMillis(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+    
+    /**
+     * Make fetches fail, or succeed again with null
+     */
+    void setFailure(IOException failure) {
+        this.failure = failure;
+    }
+    
+    int getFetches() {
+        return fetches.get();
+    }
+    
+    /**
+     * Wait until a fetch has started
+     */
+    boolean awaitFetch(long timeoutMillis) throws InterruptedException {
+        return fetchesStarted.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    @Override
+    public Result fetch(PriceTable current, PriceUpdateBatch batch) throws IOException {
+        fetches.incrementAndGet();
+        fetchesStarted.release();
+        awaitRelease();
+        try {
+            if (delayMillis > 0) {
+                Thread.sleep(delayMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        
+        batch.clear();
+        batch.setEstimates(estimates);
+        synchronized (this) {
+            for (Map.Entry<Integer, long[]> entry : prices.entrySet()) {
+                long[] price = entry.getValue();
+                batch.accept(entry.getKey(), price[0], price[1], price[0], price[1]);
+            }
+        }
+        return batch.size() > 0 ? Result.UPDATED : Result.UNCHANGED;
+    }
+    
+    @Override
+    public void cancel() {
+        release();
+    }
+    
+    private void awaitRelease() {
+        CountDownLatch latch = held;
+        if (latch == null) {
+            return;
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.sellnow;
+
+import net.runelite.client.eventbus.EventBus;
+
+import java.io.File;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Creates a {@link GEPriceService} backed by files in a test's temporary folder
+ */
+final class TestServices {
+    
+    private TestServices() {
+    }
+    
+    /**
+     * @param fallback The fallback source, or null for none
+     */
+    static GEPriceService priceService(File dir, PriceSource primary, PriceSource fallback, InterestSet interestSet) {
+        return priceService(dir, primary, fallback, interestSet, new SellNowMetrics());
+    }
+    
+    /**
+     * @param fallback The fallback source, or null for none
+     */
+    static GEPriceService priceService(File dir, PriceSource primary, PriceSource fallback, InterestSet interestSet,
+                                       SellNowMetrics metrics) {
+        // A fresh cached mapping, so starting updates never requests the real one
+        ItemMappingCache mappingCache = new ItemMappingCache(new File(dir, "item-mapping.dat"));
+        mappingCache.save(new ItemNameIndex.Builder().add(1, "Test item").build());
+        return new GEPriceService(null, null, primary, fallback,
+            new AllTimeHighStore(new File(dir, "all-time-highs.dat")), new PriceHistoryStore(dir),
+            new SharedPriceCache(dir), mappingCache, metrics, interestSet, new EventBus());
+    }
+    
+    /**
+     * Wait until an item's current price is the expected one
+     * @return Whether it was before the timeout
+     */
+    static boolean awaitPrice(GEPriceService priceService, int itemId, long price, long timeoutMillis)
+        throws InterruptedException {
+        return await(() -> priceService.getPriceTable().getCurrentPrice(itemId) == price, timeoutMillis);
+    }
+    
+    /**
+     * Wait until an item's all-time high is the expected one
+     * @return Whether it was before the timeout
+     */
+    static boolean awaitAllTimeHigh(GEPriceService priceService, int itemId, long high, long timeoutMillis)
+        throws InterruptedException {
+        return await(() -> priceService.getPriceTable().getAllTimeHigh(itemId) == high, timeoutMillis);
+    }
+    
+    /**
+     * Wait until a condition holds
+     * @return Whether it was before the timeout
+     */
+    static boolean await(BooleanSupplier condition, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            Thread.sleep(5);
+        }
+        return true;
+    }
+}